@@ -0,0 +1,154 @@
+/*
+ * Created by bkb on 2020/06/01.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.baize.analytics.android.sdk.data.MemoryEventStore;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 写缓冲的落库策略：默认 20 条或 500 毫秒批量写入
+ */
+@RunWith(AndroidJUnit4.class)
+public class AnalyticsMessagesTest {
+    /* 足够长的等待时间，测试期间不会按时间落库 */
+    private static final int NEVER = 60 * 1000;
+    private CountingEventStore mEventStore;
+    private AnalyticsMessages mMessages;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        mEventStore = new CountingEventStore();
+        mMessages = new AnalyticsMessages(context, mEventStore);
+    }
+
+    /**
+     * 测试达到条数上限时落库
+     */
+    @Test
+    public void commit_maxCount() throws Exception {
+        mMessages.setCommitPolicy(3, NEVER);
+        mMessages.enqueueEventMessage("track", newEvent("test"));
+        mMessages.enqueueEventMessage("track", newEvent("test"));
+        assertEquals(0, mEventStore.appended.get());
+        mMessages.enqueueEventMessage("track", newEvent("test"));
+        assertEquals(3, mEventStore.appended.get());
+    }
+
+    /**
+     * 测试等待时间上限到达后在 Worker 线程中落库
+     */
+    @Test
+    public void commit_interval() throws Exception {
+        mMessages.setCommitPolicy(20, 200);
+        mMessages.enqueueEventMessage("track", newEvent("test"));
+        assertEquals(0, mEventStore.appended.get());
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while (mEventStore.appended.get() == 0 && SystemClock.uptimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, mEventStore.appended.get());
+    }
+
+    /**
+     * 测试 $AppEnd、AppCrashed、track_signup 立即落库
+     */
+    @Test
+    public void commit_immediately() throws Exception {
+        mMessages.setCommitPolicy(20, NEVER);
+        mMessages.enqueueEventMessage("track", newEvent("$AppEnd"));
+        assertEquals(1, mEventStore.appended.get());
+        mMessages.enqueueEventMessage("track", newEvent("AppCrashed"));
+        assertEquals(2, mEventStore.appended.get());
+        mMessages.enqueueEventMessage("track_signup", newEvent("$SignUp"));
+        assertEquals(3, mEventStore.appended.get());
+    }
+
+    /**
+     * 测试 debug 模式下逐条落库
+     */
+    @Test
+    public void commitImmediately_debugMode() {
+        assertTrue(AnalyticsMessages.isCommitImmediately("track", "test", true));
+        assertTrue(AnalyticsMessages.isCommitImmediately("track_signup", "$SignUp", false));
+        assertTrue(AnalyticsMessages.isCommitImmediately("track", "$AppEnd", false));
+        assertTrue(AnalyticsMessages.isCommitImmediately("track", "AppCrashed", false));
+        assertFalse(AnalyticsMessages.isCommitImmediately("track", "test", false));
+    }
+
+    /**
+     * 测试 flushSync 先落库再上报：commitPendingEvents 同步写入，FLUSH_QUEUE 在上报前也会先落库
+     */
+    @Test
+    public void flushSync_commitsFirst() throws Exception {
+        mMessages.setCommitPolicy(20, NEVER);
+        mMessages.enqueueEventMessage("track", newEvent("test"));
+        mMessages.enqueueEventMessage("track", newEvent("test"));
+        assertEquals(0, mEventStore.appended.get());
+        assertEquals(2, mMessages.commitPendingEvents());
+        assertEquals(2, mEventStore.appended.get());
+
+        mMessages.enqueueEventMessage("track", newEvent("test"));
+        mMessages.flush();
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        while (mEventStore.appended.get() < 3 && SystemClock.uptimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(3, mEventStore.appended.get());
+    }
+
+    private static JSONObject newEvent(String eventName) throws Exception {
+        return new JSONObject().put("event", eventName).put("properties", new JSONObject());
+    }
+
+    /**
+     * 记录写入的事件条数，上报成功删除事件不影响计数
+     */
+    private static class CountingEventStore extends MemoryEventStore {
+        final AtomicInteger appended = new AtomicInteger();
+
+        @Override
+        public synchronized int append(JSONObject event) {
+            appended.incrementAndGet();
+            return super.append(event);
+        }
+
+        @Override
+        public synchronized int append(List<JSONObject> events) {
+            appended.addAndGet(events.size());
+            return super.append(events);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Created by bkb on 2020/06/19.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BaizeTransportTest {
+
+    /**
+     * 测试 LoopbackTransport 记录请求并返回设置的响应
+     */
+    @Test
+    public void loopback() throws Exception {
+        final byte[] body = "[{\"event\":\"test\"}]".getBytes("UTF-8");
+        LoopbackTransport transport = new LoopbackTransport();
+        transport.setResponseCode(503);
+        transport.setResponseHeader("Retry-After", "30");
+
+        BaizeTransport.Request request = new BaizeTransport.Request("http://localhost/sa", body.length, new BaizeTransport.Body() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(body);
+            }
+        });
+        request.setHeader("Cookie", null);
+        request.setHeader("Content-Encoding", "gzip");
+        BaizeTransport.Response response = transport.execute(request);
+
+        assertEquals(503, response.getCode());
+        assertEquals("30", response.getHeader("retry-after"));
+        assertEquals(0, response.getBody().length);
+        assertEquals(1, transport.getRequests().size());
+        assertEquals(Collections.singletonMap("Content-Encoding", "gzip"), transport.getRequests().get(0).getHeaders());
+        assertArrayEquals(body, transport.getBodies().get(0));
+
+        transport.clear();
+        assertEquals(0, transport.getRequests().size());
+    }
+
+    /**
+     * 测试重定向地址的补全
+     */
+    @Test
+    public void redirectLocation() throws Exception {
+        assertEquals("https://example.com/sa", BaizeHttpURLConnectionHelper.getLocation("/sa", "https://example.com/old"));
+        assertEquals("http://other.com/sa", BaizeHttpURLConnectionHelper.getLocation("http://other.com/sa", "https://example.com/old"));
+        assertNull(BaizeHttpURLConnectionHelper.getLocation((String) null, "https://example.com/old"));
+    }
+}
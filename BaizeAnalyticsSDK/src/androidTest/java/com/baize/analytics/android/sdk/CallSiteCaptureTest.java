@@ -0,0 +1,91 @@
+/*
+ * Created by bkb on 2020/06/05.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import android.util.Log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CallSiteCaptureTest {
+    private static final String TAG = "SA.CallSiteCaptureTest";
+    private static final int ITERATIONS = 10000;
+
+    /**
+     * 测试 FULL 与 CACHED 模式返回相同的调用位置
+     */
+    @Test
+    public void cached_sameAsFull() {
+        CallSiteCapture capture = new CallSiteCapture();
+        capture.setMode(BaizeCallSiteMode.FULL, 1);
+        String full = capture.getLibDetail("test");
+        capture.setMode(BaizeCallSiteMode.CACHED, 1);
+        String cached = capture.getLibDetail("test");
+        assertNotNull(full);
+        assertTrue(full.startsWith(CallSiteCaptureTest.class.getName() + "##cached_sameAsFull##"));
+        assertEquals(full.substring(0, full.lastIndexOf("##")), cached.substring(0, cached.lastIndexOf("##")));
+    }
+
+    /**
+     * 测试 OFF 与 SAMPLED 模式
+     */
+    @Test
+    public void offAndSampled() {
+        CallSiteCapture capture = new CallSiteCapture();
+        capture.setMode(BaizeCallSiteMode.OFF, 1);
+        assertNull(capture.getLibDetail("test"));
+
+        capture.setMode(BaizeCallSiteMode.SAMPLED, 10);
+        int captured = 0;
+        for (int i = 0; i < 100; i++) {
+            if (capture.getLibDetail("test") != null) {
+                captured++;
+            }
+        }
+        assertEquals(10, captured);
+    }
+
+    /**
+     * 各模式下每个事件的耗时，结果输出到 logcat
+     */
+    @Test
+    public void benchmark() {
+        int[] modes = {BaizeCallSiteMode.OFF, BaizeCallSiteMode.SAMPLED, BaizeCallSiteMode.CACHED, BaizeCallSiteMode.FULL};
+        String[] names = {"OFF", "SAMPLED", "CACHED", "FULL"};
+        for (int i = 0; i < modes.length; i++) {
+            CallSiteCapture capture = new CallSiteCapture();
+            capture.setMode(modes[i], 100);
+            // 预热
+            run(capture, ITERATIONS);
+            long start = System.nanoTime();
+            run(capture, ITERATIONS);
+            long costPerEvent = (System.nanoTime() - start) / ITERATIONS;
+            Log.i(TAG, String.format("%s: %d ns/event", names[i], costPerEvent));
+        }
+    }
+
+    private static void run(CallSiteCapture capture, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            capture.getLibDetail("benchmark");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Created by bkb on 2020/06/18.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import android.net.Uri;
+
+import com.baize.analytics.android.sdk.util.Base64Coder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class DataListOutputStreamTest {
+
+    /**
+     * 测试流式编码的 data_list 和 crc 与一次性编码的结果相同，覆盖 Base64 的各种填充长度
+     */
+    @Test
+    public void sameAsFormEncoding() throws Exception {
+        Random random = new Random(0);
+        for (int length = 0; length < 200; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            DataListOutputStream dataList = new DataListOutputStream(out);
+            dataList.write(data);
+            dataList.finish();
+
+            String base64 = new String(Base64Coder.encode(data));
+            Uri expected = Uri.parse("http://localhost/?" + out.toString("UTF-8"));
+            assertEquals("1", expected.getQueryParameter("gzip"));
+            assertEquals(base64, expected.getQueryParameter("data_list"));
+            assertEquals(String.valueOf(base64.hashCode()), expected.getQueryParameter("crc"));
+        }
+    }
+}
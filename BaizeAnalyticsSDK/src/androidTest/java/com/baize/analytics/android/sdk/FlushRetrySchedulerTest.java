@@ -0,0 +1,91 @@
+/*
+ * Created by bkb on 2020/06/22.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FlushRetrySchedulerTest {
+    private static final long NOW = 1593000000000L;
+
+    /**
+     * 退避时长在 [0, 上限] 之间，连续失败后熔断，熔断结束后试探一次，成功后恢复
+     */
+    @Test
+    public void backoffAndCircuit() {
+        FlushRetryScheduler scheduler = new FlushRetryScheduler(null, new Random(1));
+        assertEquals(0, scheduler.getDelay(NOW));
+        for (int i = 1; i < FlushRetryScheduler.CIRCUIT_THRESHOLD; i++) {
+            long delay = scheduler.onFailure(NOW);
+            long ceiling = Math.min(FlushRetryScheduler.MAX_DELAY, FlushRetryScheduler.BASE_DELAY << (i - 1));
+            assertTrue(delay >= 0 && delay <= ceiling);
+            assertEquals(delay, scheduler.getDelay(NOW));
+        }
+        assertEquals(FlushRetryScheduler.OPEN_DURATION, scheduler.onFailure(NOW));
+        assertTrue(scheduler.getDelay(NOW + FlushRetryScheduler.OPEN_DURATION - 1) > 0);
+        // 熔断结束，试探失败后继续熔断
+        assertEquals(0, scheduler.getDelay(NOW + FlushRetryScheduler.OPEN_DURATION));
+        assertEquals(FlushRetryScheduler.OPEN_DURATION, scheduler.onFailure(NOW + FlushRetryScheduler.OPEN_DURATION));
+        scheduler.onSuccess();
+        assertFalse(scheduler.isRetrying());
+        assertEquals(0, scheduler.getDelay(NOW));
+    }
+
+    /**
+     * Retry-After 支持秒数和 HTTP 日期，失败时至少等待其指定的时长
+     */
+    @Test
+    public void retryAfter() {
+        assertEquals(120 * 1000, FlushRetryScheduler.parseRetryAfter("120", NOW));
+        assertEquals(0, FlushRetryScheduler.parseRetryAfter("soon", NOW));
+        // NOW 为 Wed, 24 Jun 2020 12:00:00 GMT
+        assertEquals(60 * 1000, FlushRetryScheduler.parseRetryAfter("Wed, 24 Jun 2020 12:01:00 GMT", NOW));
+
+        FlushRetryScheduler scheduler = new FlushRetryScheduler(null, new Random(1));
+        scheduler.onRetryAfter("3600", NOW);
+        assertEquals(3600 * 1000, scheduler.onFailure(NOW));
+        scheduler.onRetryAfter(String.valueOf(Long.MAX_VALUE / 1000), NOW);
+        assertEquals(FlushRetryScheduler.MAX_RETRY_AFTER, scheduler.onFailure(NOW));
+    }
+
+    /**
+     * 状态保存后在新的实例中继续生效
+     */
+    @Test
+    public void persistState() {
+        Context context = ApplicationProvider.getApplicationContext();
+        SharedPreferences preferences = context.getSharedPreferences("FlushRetrySchedulerTest", Context.MODE_PRIVATE);
+        preferences.edit().clear().commit();
+        long delay = new FlushRetryScheduler(preferences, new Random(1)).onFailure(NOW);
+        FlushRetryScheduler restored = new FlushRetryScheduler(preferences, new Random(1));
+        assertTrue(restored.isRetrying());
+        assertEquals(delay, restored.getDelay(NOW));
+        restored.onSuccess();
+        assertFalse(new FlushRetryScheduler(preferences, new Random(1)).isRetrying());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Created by bkb on 2020/06/01.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import com.baize.analytics.android.sdk.data.DbParams;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrackIdGeneratorTest {
+    private static final long MAX_SAFE_INTEGER = (1L << 53) - 1;
+    private static final long EPOCH = (1 << 21) - 1;
+
+    /**
+     * 测试跨越预留块时 _track_id 继续递增，且不超过 2^53
+     */
+    @Test
+    public void nextTrackId_increasingAcrossBlocks() {
+        final List<Long> reserved = new ArrayList<>();
+        TrackIdGenerator generator = new TrackIdGenerator(EPOCH, new TrackIdGenerator.Reservation() {
+            @Override
+            public long reserve() {
+                long start = (long) reserved.size() * DbParams.TRACK_ID_BLOCK_SIZE;
+                reserved.add(start);
+                return start;
+            }
+        });
+        long last = -1;
+        for (int i = 0; i < DbParams.TRACK_ID_BLOCK_SIZE * 2 + 1; i++) {
+            long trackId = generator.nextTrackId();
+            assertTrue(trackId > last);
+            assertTrue(trackId <= MAX_SAFE_INTEGER);
+            last = trackId;
+        }
+        assertEquals(3, reserved.size());
+        assertEquals((EPOCH << 32) | (DbParams.TRACK_ID_BLOCK_SIZE * 2), last);
+    }
+
+    /**
+     * 测试预留失败时退回随机序号，下一块重新尝试预留
+     */
+    @Test
+    public void nextTrackId_fallBackWhenReserveFails() {
+        final int[] calls = new int[1];
+        TrackIdGenerator generator = new TrackIdGenerator(EPOCH, new TrackIdGenerator.Reservation() {
+            @Override
+            public long reserve() {
+                calls[0]++;
+                return -1;
+            }
+        });
+        long first = generator.nextTrackId();
+        assertEquals(EPOCH, first >>> 32);
+        assertTrue(first <= MAX_SAFE_INTEGER);
+        for (int i = 1; i < DbParams.TRACK_ID_BLOCK_SIZE; i++) {
+            long trackId = generator.nextTrackId();
+            assertEquals(EPOCH, trackId >>> 32);
+            assertTrue(trackId <= MAX_SAFE_INTEGER);
+        }
+        assertEquals(1, calls[0]);
+        generator.nextTrackId();
+        assertEquals(2, calls[0]);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Created by bkb on 2020/06/01.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TrackTaskManagerTest {
+    private TrackTaskManager mTrackTaskManager;
+
+    @Before
+    public void setUp() {
+        mTrackTaskManager = TrackTaskManager.getInstance();
+        drain();
+    }
+
+    @After
+    public void tearDown() {
+        drain();
+        mTrackTaskManager.setQueueConfig(TrackTaskManager.DEFAULT_CAPACITY, BaizeQueueOverflowPolicy.DROP_LOWEST_PRIORITY);
+    }
+
+    /**
+     * 测试任务按 FIFO 顺序取出
+     */
+    @Test
+    public void addAndGet_fifo() {
+        Runnable[] tasks = newTasks(3);
+        for (Runnable task : tasks) {
+            mTrackTaskManager.addTrackEventTask(task);
+        }
+        for (Runnable task : tasks) {
+            assertSame(task, mTrackTaskManager.getTrackEventTask());
+        }
+        assertNull(mTrackTaskManager.getTrackEventTask());
+    }
+
+    /**
+     * 测试 DROP_NEWEST 策略丢弃新任务并计数
+     */
+    @Test
+    public void overflow_dropNewest() {
+        mTrackTaskManager.setQueueConfig(100, BaizeQueueOverflowPolicy.DROP_NEWEST);
+        long dropped = mTrackTaskManager.getDroppedTaskCount();
+        Runnable[] tasks = newTasks(101);
+        for (Runnable task : tasks) {
+            mTrackTaskManager.addTrackEventTask(task);
+        }
+        assertEquals(dropped + 1, mTrackTaskManager.getDroppedTaskCount());
+        assertSame(tasks[0], mTrackTaskManager.getTrackEventTask());
+    }
+
+    /**
+     * 测试 DROP_OLDEST 策略丢弃最早的任务
+     */
+    @Test
+    public void overflow_dropOldest() {
+        mTrackTaskManager.setQueueConfig(100, BaizeQueueOverflowPolicy.DROP_OLDEST);
+        Runnable[] tasks = newTasks(101);
+        for (Runnable task : tasks) {
+            mTrackTaskManager.addTrackEventTask(task);
+        }
+        assertSame(tasks[1], mTrackTaskManager.getTrackEventTask());
+    }
+
+    /**
+     * 测试 DROP_LOWEST_PRIORITY 策略优先丢弃低优先级任务，并保持其余任务顺序
+     */
+    @Test
+    public void overflow_dropLowestPriority() {
+        mTrackTaskManager.setQueueConfig(100, BaizeQueueOverflowPolicy.DROP_LOWEST_PRIORITY);
+        Runnable[] tasks = newTasks(101);
+        for (int i = 0; i < 100; i++) {
+            mTrackTaskManager.addTrackEventTask(tasks[i], i == 50 ? TrackTaskManager.PRIORITY_LOW : TrackTaskManager.PRIORITY_NORMAL);
+        }
+        mTrackTaskManager.addTrackEventTask(tasks[100], TrackTaskManager.PRIORITY_HIGH);
+        for (int i = 0; i <= 100; i++) {
+            if (i != 50) {
+                assertSame(tasks[i], mTrackTaskManager.getTrackEventTask());
+            }
+        }
+        assertNull(mTrackTaskManager.getTrackEventTask());
+    }
+
+    /**
+     * 测试 BLOCK 策略等待时被中断，丢弃新任务并保留中断状态
+     */
+    @Test
+    public void overflow_blockInterrupted() {
+        mTrackTaskManager.setQueueConfig(1, BaizeQueueOverflowPolicy.BLOCK);
+        Runnable[] tasks = newTasks(2);
+        mTrackTaskManager.addTrackEventTask(tasks[0]);
+        long dropped = mTrackTaskManager.getDroppedTaskCount();
+        Thread.currentThread().interrupt();
+        mTrackTaskManager.addTrackEventTask(tasks[1]);
+        assertTrue(Thread.interrupted());
+        assertEquals(dropped + 1, mTrackTaskManager.getDroppedTaskCount());
+        assertSame(tasks[0], mTrackTaskManager.getTrackEventTask());
+        assertNull(mTrackTaskManager.getTrackEventTask());
+    }
+
+    /**
+     * 测试修改容量时保留队列中的任务和先后顺序，容量变小时保留最新的任务
+     */
+    @Test
+    public void setQueueConfig_keepsTasks() {
+        mTrackTaskManager.setQueueConfig(4, BaizeQueueOverflowPolicy.DROP_LOWEST_PRIORITY);
+        Runnable[] tasks = newTasks(4);
+        mTrackTaskManager.addTrackEventTask(tasks[0], TrackTaskManager.PRIORITY_HIGH);
+        mTrackTaskManager.addTrackEventTask(tasks[1], TrackTaskManager.PRIORITY_LOW);
+        mTrackTaskManager.addTrackEventTask(tasks[2], TrackTaskManager.PRIORITY_NORMAL);
+        mTrackTaskManager.addTrackEventTask(tasks[3], TrackTaskManager.PRIORITY_HIGH);
+        mTrackTaskManager.setQueueConfig(8, BaizeQueueOverflowPolicy.DROP_LOWEST_PRIORITY);
+        mTrackTaskManager.setQueueConfig(3, BaizeQueueOverflowPolicy.DROP_LOWEST_PRIORITY);
+        for (int i = 1; i < tasks.length; i++) {
+            assertSame(tasks[i], mTrackTaskManager.getTrackEventTask());
+        }
+        assertNull(mTrackTaskManager.getTrackEventTask());
+    }
+
+    private Runnable[] newTasks(int count) {
+        Runnable[] tasks = new Runnable[count];
+        for (int i = 0; i < count; i++) {
+            tasks[i] = new Runnable() {
+                @Override
+                public void run() {
+                }
+            };
+        }
+        return tasks;
+    }
+
+    private void drain() {
+        while (mTrackTaskManager.getTrackEventTask() != null) {
+            // ignore
+        }
+    }
+}
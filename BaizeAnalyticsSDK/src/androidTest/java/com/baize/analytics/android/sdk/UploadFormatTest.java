@@ -0,0 +1,102 @@
+/*
+ * Created by bkb on 2020/06/18.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import android.net.Uri;
+import android.util.Log;
+
+import com.baize.analytics.android.sdk.data.EventBatch;
+import com.baize.analytics.android.sdk.data.MemoryEventStore;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class UploadFormatTest {
+    private static final String TAG = "SA.UploadFormatTest";
+    private static final int EVENT_COUNT = 50;
+
+    /**
+     * 对比 FORM 和 GZIP 格式的请求体字节数，结果输出到 logcat
+     */
+    @Test
+    public void compareBodySize() throws Exception {
+        EventBatch batch = newBatch();
+        byte[] json = batch.getData();
+        byte[] form = AnalyticsMessages.encodeBody(json, BaizeUploadFormat.FORM);
+        byte[] gzip = AnalyticsMessages.encodeBody(json, BaizeUploadFormat.GZIP);
+
+        // GZIP 格式的请求体解压后就是事件 JSON 数组
+        assertArrayEquals(json, gunzip(gzip));
+        // FORM 格式至少有 Base64 的 4/3 膨胀
+        assertTrue(form.length >= gzip.length * 4 / 3);
+        assertNotNull(Uri.parse("http://localhost/?" + new String(form, "UTF-8")).getQueryParameter("data_list"));
+
+        Log.i(TAG, String.format("%d events, json: %d bytes, form: %d bytes, gzip: %d bytes, saved: %d%%",
+                batch.getCount(), json.length, form.length, gzip.length, 100 - gzip.length * 100 / form.length));
+    }
+
+    private static EventBatch newBatch() throws Exception {
+        MemoryEventStore store = new MemoryEventStore();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            JSONObject properties = new JSONObject();
+            properties.put("$lib", "Android");
+            properties.put("$lib_version", "4.0.0");
+            properties.put("$manufacturer", "HUAWEI");
+            properties.put("$model", "ELS-AN00");
+            properties.put("$os", "Android");
+            properties.put("$os_version", "10");
+            properties.put("$screen_width", 1080);
+            properties.put("$screen_height", 2340);
+            properties.put("$network_type", "WIFI");
+            properties.put("$wifi", true);
+            properties.put("$is_first_day", false);
+            properties.put("$device_id", "a1b2c3d4e5f60789");
+            properties.put("$screen_name", "com.example.MainActivity");
+            properties.put("$element_content", "button " + i);
+            JSONObject event = new JSONObject();
+            event.put("_track_id", 1000000 + i);
+            event.put("time", 1592460000000L + i * 1000);
+            event.put("type", "track");
+            event.put("distinct_id", "a1b2c3d4e5f60789");
+            event.put("event", "$AppClick");
+            event.put("properties", properties);
+            store.append(event);
+        }
+        return store.peek(EVENT_COUNT, 0);
+    }
+
+    private static byte[] gunzip(byte[] data) throws Exception {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toByteArray();
+    }
+}
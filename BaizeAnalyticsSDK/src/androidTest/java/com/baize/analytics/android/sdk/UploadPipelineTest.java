@@ -0,0 +1,125 @@
+/*
+ * Created by bkb on 2020/06/20.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import android.util.Log;
+
+import com.baize.analytics.android.sdk.data.EventBatch;
+import com.baize.analytics.android.sdk.data.MemoryEventStore;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class UploadPipelineTest {
+    private static final String TAG = "SA.UploadPipelineTest";
+    private static final int EVENT_COUNT = 2000;
+    private static final int BATCH_COUNT = 100;
+    private static final long LATENCY = 50;
+
+    /**
+     * 对比串行和流水线上报积压事件的耗时，LoopbackTransport 模拟网络往返时间，结果输出到 logcat
+     */
+    @Test
+    public void benchmark() throws Exception {
+        long serial = drainWithLatency(1);
+        long pipelined = drainWithLatency(UploadPipeline.MAX_WINDOW);
+        Log.i(TAG, String.format("%d batches, latency %d ms, window 1: %d ms, window %d: %d ms",
+                EVENT_COUNT / BATCH_COUNT, LATENCY, serial, UploadPipeline.MAX_WINDOW, pipelined));
+    }
+
+    /**
+     * 测试某一批失败时只删除之前的批次，之后的批次即使成功也不删除
+     */
+    @Test
+    public void orderedAck() throws Exception {
+        final MemoryEventStore store = newStore();
+        UploadPipeline pipeline = new UploadPipeline(store);
+        int acked = pipeline.drain(newReader(store), new UploadPipeline.Uploader() {
+            @Override
+            public boolean upload(EventBatch batch) {
+                // 第 3 批失败
+                return !String.valueOf(BATCH_COUNT * 3).equals(batch.getLastId());
+            }
+        }, UploadPipeline.MAX_WINDOW);
+        assertEquals(2, acked);
+        assertEquals(EVENT_COUNT - BATCH_COUNT * 2, store.count());
+
+        // 下次从失败的批次开始上报
+        acked = pipeline.drain(newReader(store), new UploadPipeline.Uploader() {
+            @Override
+            public boolean upload(EventBatch batch) {
+                return true;
+            }
+        }, UploadPipeline.MAX_WINDOW);
+        assertEquals(EVENT_COUNT / BATCH_COUNT - 2, acked);
+        assertEquals(0, store.count());
+    }
+
+    private long drainWithLatency(int window) throws Exception {
+        MemoryEventStore store = newStore();
+        final LoopbackTransport transport = new LoopbackTransport();
+        transport.setLatency(LATENCY);
+        long start = System.currentTimeMillis();
+        int acked = new UploadPipeline(store).drain(newReader(store), new UploadPipeline.Uploader() {
+            @Override
+            public boolean upload(final EventBatch batch) {
+                try {
+                    BaizeTransport.Request request = new BaizeTransport.Request("http://localhost/sa", -1, new BaizeTransport.Body() {
+                        @Override
+                        public void writeTo(OutputStream out) throws IOException {
+                            batch.writeTo(out);
+                        }
+                    });
+                    return transport.execute(request).getCode() == 200;
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+        }, window);
+        long cost = System.currentTimeMillis() - start;
+        assertEquals(EVENT_COUNT / BATCH_COUNT, acked);
+        assertEquals(EVENT_COUNT / BATCH_COUNT, transport.getBodies().size());
+        assertEquals(0, store.count());
+        return cost;
+    }
+
+    private static UploadPipeline.BatchReader newReader(final MemoryEventStore store) {
+        return new UploadPipeline.BatchReader() {
+            @Override
+            public EventBatch read(String afterId) {
+                return store.peek(afterId, BATCH_COUNT, 0);
+            }
+        };
+    }
+
+    private static MemoryEventStore newStore() throws Exception {
+        MemoryEventStore store = new MemoryEventStore();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            JSONObject event = new JSONObject();
+            event.put("event", "test");
+            event.put("_track_id", i);
+            store.append(event);
+        }
+        return store;
+    }
+}
@@ -65,6 +65,40 @@ public class BaizeDataContentProviderTest {
     public void setUp() {
     }
 
+    @Test
+    public void testEventsCount() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        resolver.delete(dbParams.getEventUri(), null, null);
+        assertEquals(0, queryEventsCount(resolver));
+
+        ContentValues[] valuesArray = new ContentValues[3];
+        for (int i = 0; i < valuesArray.length; i++) {
+            valuesArray[i] = new ContentValues();
+            valuesArray[i].put(DbParams.KEY_DATA, "foo" + i);
+            valuesArray[i].put(DbParams.KEY_CREATED_AT, System.currentTimeMillis());
+        }
+        resolver.bulkInsert(dbParams.getEventUri(), valuesArray);
+        assertEquals(3, queryEventsCount(resolver));
+
+        Uri uri = resolver.insert(dbParams.getEventUri(), valuesArray[0]);
+        assertEquals(4, queryEventsCount(resolver));
+
+        resolver.delete(dbParams.getEventUri(), "_id <= ?", new String[]{String.valueOf(ContentUris.parseId(uri) - 1)});
+        assertEquals(1, queryEventsCount(resolver));
+
+        resolver.delete(dbParams.getEventUri(), null, null);
+        assertEquals(0, queryEventsCount(resolver));
+    }
+
+    private int queryEventsCount(ContentResolver resolver) {
+        Cursor cursor = resolver.query(dbParams.getEventsCountUri(), null, null, null, null);
+        assertNotNull(cursor);
+        assertTrue(cursor.moveToFirst());
+        int count = cursor.getInt(0);
+        cursor.close();
+        return count;
+    }
+
     @Test
     public void testCRUD() {
         //clear data
@@ -10,15 +10,18 @@ import com.baize.analytics.android.sdk.data.DbParams;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
 @RunWith(AndroidJUnit4.class)
@@ -104,4 +107,45 @@ public class DbAdapterTest {
             ex.printStackTrace();
         }
     }
+
+    /**
+     * 提取了属性集合的事件，读取时按字节还原
+     */
+    @Test
+    public void peekInternedEvents() throws Exception {
+        DbAdapter dbAdapter = DbAdapter.getInstance();
+        dbAdapter.deleteAllEvents();
+        dbAdapter.setSharedPropertyKeys(Arrays.asList("$os", "$lib"));
+        try {
+            List<JSONObject> list = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                JSONObject properties = new JSONObject();
+                properties.put("$os", "Android");
+                properties.put("$lib", "安卓");
+                if (i > 0) {
+                    properties.put("index", i);
+                }
+                list.add(new JSONObject().put("event", "test").put("properties", properties).put("time", 1000L + i));
+            }
+            assertEquals(3, dbAdapter.addJSON(list));
+
+            EventBatch batch = dbAdapter.peek(10, 0);
+            assertNotNull(batch);
+            JSONArray array = new JSONArray(batch.toString());
+            assertEquals(3, array.length());
+            for (int i = 0; i < 3; i++) {
+                JSONObject event = array.getJSONObject(i);
+                assertFalse(event.has("_ps"));
+                assertEquals("test", event.getString("event"));
+                assertEquals(1000L + i, event.getLong("time"));
+                JSONObject properties = event.getJSONObject("properties");
+                assertEquals("Android", properties.getString("$os"));
+                assertEquals("安卓", properties.getString("$lib"));
+                assertEquals(i > 0 ? 3 : 2, properties.length());
+            }
+            assertEquals(0, dbAdapter.ack(batch.getLastId()));
+        } finally {
+            dbAdapter.setSharedPropertyKeys(null);
+        }
+    }
 }
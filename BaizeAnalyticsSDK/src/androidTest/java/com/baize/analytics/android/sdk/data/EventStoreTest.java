@@ -0,0 +1,188 @@
+/*
+ * Created by bkb on 2020/06/11.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(AndroidJUnit4.class)
+public class EventStoreTest {
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        new FileEventStore(context, 32 * 1024 * 1024L).clear();
+        new MappedEventStore(context, 32 * 1024 * 1024L).clear();
+    }
+
+    @Test
+    public void memoryEventStore() throws Exception {
+        verify(new MemoryEventStore());
+    }
+
+    @Test
+    public void fileEventStore() throws Exception {
+        verify(new FileEventStore(context, 32 * 1024 * 1024L));
+    }
+
+    @Test
+    public void fileEventStoreReopen() throws Exception {
+        EventStore eventStore = new FileEventStore(context, 32 * 1024 * 1024L);
+        eventStore.append(newEvent(0));
+        eventStore.append(newEvent(1));
+        EventBatch batch = eventStore.peek(1, 0);
+        eventStore.ack(batch.getLastId());
+
+        // 重新打开后只保留未确认的事件
+        eventStore = new FileEventStore(context, 32 * 1024 * 1024L);
+        assertEquals(1, eventStore.count());
+        JSONArray array = new JSONArray(eventStore.peek(50, 0).toString());
+        assertEquals(1, array.length());
+        assertEquals(1, array.getJSONObject(0).getInt("index"));
+        eventStore.clear();
+    }
+
+    @Test
+    public void mappedEventStore() throws Exception {
+        verify(new MappedEventStore(context, 32 * 1024 * 1024L));
+    }
+
+    @Test
+    public void mappedEventStoreReopen() throws Exception {
+        EventStore eventStore = new MappedEventStore(context, 32 * 1024 * 1024L);
+        for (int i = 0; i < 3; i++) {
+            eventStore.append(newEvent(i));
+        }
+        EventBatch batch = eventStore.peek(1, 0);
+        eventStore.ack(batch.getLastId());
+
+        // 重新打开后从 cursor 继续读取，并在尾部继续写入
+        eventStore = new MappedEventStore(context, 32 * 1024 * 1024L);
+        assertEquals(2, eventStore.count());
+        assertEquals(3, eventStore.append(newEvent(3)));
+        JSONArray array = new JSONArray(eventStore.peek(50, 0).toString());
+        assertEquals(3, array.length());
+        for (int i = 0; i < array.length(); i++) {
+            assertEquals(i + 1, array.getJSONObject(i).getInt("index"));
+        }
+        eventStore.clear();
+    }
+
+    @Test
+    public void mappedEventStoreClearReopen() throws Exception {
+        EventStore eventStore = new MappedEventStore(context, 32 * 1024 * 1024L);
+        for (int i = 0; i < 3; i++) {
+            eventStore.append(newEvent(i));
+        }
+        eventStore.clear();
+
+        // 清空后复用的分段文件使用新的序号，残留的旧记录不会被恢复
+        eventStore = new MappedEventStore(context, 32 * 1024 * 1024L);
+        assertEquals(1, eventStore.append(newEvent(3)));
+        eventStore = new MappedEventStore(context, 32 * 1024 * 1024L);
+        assertEquals(1, eventStore.count());
+        JSONArray array = new JSONArray(eventStore.peek(50, 0).toString());
+        assertEquals(3, array.getJSONObject(0).getInt("index"));
+
+        // 超过一个分段大小的事件写入失败
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 1024 * 1024; i++) {
+            padding.append('a');
+        }
+        JSONObject event = newEvent(4);
+        event.put("padding", padding.toString());
+        assertEquals(DbParams.DB_UPDATE_ERROR, eventStore.append(event));
+        assertEquals(1, eventStore.count());
+        eventStore.clear();
+    }
+
+    @Test
+    public void mappedEventStoreRotate() throws Exception {
+        // 2 个分段的空间，写满后删除最早的分段
+        EventStore eventStore = new MappedEventStore(context, 2 * 1024 * 1024L);
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            padding.append('a');
+        }
+        int total = 3000;
+        for (int i = 0; i < total; i++) {
+            JSONObject event = newEvent(i);
+            event.put("padding", padding.toString());
+            eventStore.append(event);
+        }
+        int count = eventStore.count();
+        assertEquals(true, count > 0 && count < total);
+        JSONArray array = new JSONArray(eventStore.peek(1, 0).toString());
+        assertEquals(total - count, array.getJSONObject(0).getInt("index"));
+        eventStore.clear();
+    }
+
+    private void verify(EventStore eventStore) throws Exception {
+        assertEquals(1, eventStore.append(newEvent(0)));
+        List<JSONObject> events = new ArrayList<>();
+        for (int i = 1; i < 5; i++) {
+            events.add(newEvent(i));
+        }
+        assertEquals(5, eventStore.append(events));
+
+        EventBatch batch = eventStore.peek(3, 0);
+        JSONArray array = new JSONArray(batch.toString());
+        assertEquals(3, array.length());
+        for (int i = 0; i < array.length(); i++) {
+            assertEquals(i, array.getJSONObject(i).getInt("index"));
+        }
+
+        // 未确认时从上一批之后继续读取
+        EventBatch next = eventStore.peek(batch.getLastId(), 50, 0);
+        array = new JSONArray(next.toString());
+        assertEquals(2, array.length());
+        assertEquals(3, array.getJSONObject(0).getInt("index"));
+        assertNull(eventStore.peek(next.getLastId(), 50, 0));
+        assertEquals(2, eventStore.ack(batch.getLastId()));
+
+        array = new JSONArray(eventStore.peek(50, 0).toString());
+        assertEquals(2, array.length());
+        assertEquals(3, array.getJSONObject(0).getInt("index"));
+
+        eventStore.clear();
+        assertEquals(0, eventStore.count());
+        assertNull(eventStore.peek(50, 0));
+    }
+
+    private static JSONObject newEvent(int index) throws Exception {
+        JSONObject event = new JSONObject();
+        event.put("event", "test");
+        event.put("index", index);
+        return event;
+    }
+}
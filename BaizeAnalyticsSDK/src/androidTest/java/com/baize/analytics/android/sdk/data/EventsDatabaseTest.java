@@ -0,0 +1,153 @@
+/*
+ * Created by bkb on 2020/06/10.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class EventsDatabaseTest {
+    private static final String TAG = "EventsDatabaseTest";
+    private static final int EVENT_COUNT = 1000;
+    private static final byte[] EVENT_DATA = "{\"event\":\"test\",\"properties\":{\"key\":\"value\"}}".getBytes();
+    private Context context;
+    private EventsDatabase eventsDatabase;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        DbParams.getInstance(context.getPackageName());
+        eventsDatabase = new EventsDatabase(context);
+        eventsDatabase.deleteAll();
+    }
+
+    @Test
+    public void insertAndCleanup() {
+        assertEquals(1, eventsDatabase.insert(EVENT_DATA, EventEvictor.PRIORITY_NORMAL, System.currentTimeMillis()));
+        List<byte[]> dataList = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            dataList.add(EVENT_DATA);
+        }
+        assertEquals(4, eventsDatabase.insert(dataList, new int[dataList.size()], System.currentTimeMillis()));
+
+        Cursor cursor = eventsDatabase.query(null, 2);
+        assertTrue(cursor.moveToLast());
+        String lastId = cursor.getString(cursor.getColumnIndex("_id"));
+        cursor.close();
+        assertEquals(2, eventsDatabase.cleanup(lastId));
+
+        eventsDatabase.deleteAll();
+        cursor = eventsDatabase.query(null, 10);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    @Test
+    public void evictByPriority() {
+        int[] priorities = {EventEvictor.PRIORITY_HIGH, EventEvictor.PRIORITY_LOW, EventEvictor.PRIORITY_NORMAL,
+                EventEvictor.PRIORITY_LOW, EventEvictor.PRIORITY_HIGH};
+        List<byte[]> dataList = new ArrayList<>();
+        for (int i = 0; i < priorities.length; i++) {
+            dataList.add(EVENT_DATA);
+        }
+        assertEquals(5, eventsDatabase.insert(dataList, priorities, System.currentTimeMillis()));
+        assertTrue(eventsDatabase.databaseSize() > 0);
+
+        // 先删除低优先级的事件
+        assertEquals(2, eventsDatabase.evict(EventEvictor.PRIORITY_LOW, 3));
+        assertEquals(1, eventsDatabase.evict(EventEvictor.PRIORITY_NORMAL, 3));
+        assertEquals(2, eventsDatabase.count());
+        // 剩余的都是高优先级的事件
+        assertEquals(2, eventsDatabase.evict(EventEvictor.PRIORITY_HIGH, 3));
+        assertEquals(0, eventsDatabase.count());
+    }
+
+    @Test
+    public void migrateLegacyEvents() {
+        String legacyName = "baize_legacy_test";
+        int legacyCount = LegacyEventsMigrator.CHUNK_SIZE * 2 + 50;
+        SQLiteDatabase legacy = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(legacyName), null);
+        legacy.setVersion(4);
+        legacy.execSQL("CREATE TABLE events (_id INTEGER PRIMARY KEY AUTOINCREMENT, data TEXT NOT NULL, created_at INTEGER NOT NULL)");
+        for (int i = 0; i < legacyCount; i++) {
+            ContentValues cv = new ContentValues();
+            cv.put(DbParams.KEY_DATA, new String(EVENT_DATA));
+            cv.put(DbParams.KEY_CREATED_AT, System.currentTimeMillis());
+            legacy.insert(DbParams.TABLE_EVENTS, null, cv);
+        }
+        legacy.close();
+
+        // 迁移一批后换一个实例继续，模拟进程被杀后重启
+        assertTrue(eventsDatabase.migrateLegacyEvents(new LegacyEventsMigrator(context, legacyName)));
+        assertEquals(LegacyEventsMigrator.CHUNK_SIZE, eventsDatabase.count());
+        LegacyEventsMigrator migrator = new LegacyEventsMigrator(context, legacyName);
+        while (eventsDatabase.migrateLegacyEvents(migrator)) {
+            assertTrue(eventsDatabase.count() <= legacyCount);
+        }
+        assertEquals(legacyCount, eventsDatabase.count());
+        assertFalse(context.getDatabasePath(legacyName).exists());
+        assertFalse(eventsDatabase.migrateLegacyEvents(new LegacyEventsMigrator(context, legacyName)));
+        eventsDatabase.deleteAll();
+    }
+
+    /**
+     * 对比 ContentProvider 和直接访问数据库每秒写入的事件数，结果输出到 logcat
+     */
+    @Test
+    public void benchmark() {
+        ContentResolver resolver = context.getContentResolver();
+        long start = System.nanoTime();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            ContentValues cv = new ContentValues();
+            cv.put(DbParams.KEY_DATA, EVENT_DATA);
+            cv.put(DbParams.KEY_CREATED_AT, System.currentTimeMillis());
+            cv.put(DbParams.KEY_CRC, EventRecords.checksum(EVENT_DATA));
+            resolver.insert(DbParams.getInstance().getEventUri(), cv);
+        }
+        long providerCost = System.nanoTime() - start;
+        resolver.delete(DbParams.getInstance().getEventUri(), null, null);
+
+        start = System.nanoTime();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            eventsDatabase.insert(EVENT_DATA, EventEvictor.PRIORITY_NORMAL, System.currentTimeMillis());
+        }
+        long directCost = System.nanoTime() - start;
+        eventsDatabase.deleteAll();
+
+        Log.i(TAG, String.format("provider: %d events/s, direct: %d events/s",
+                EVENT_COUNT * 1000000000L / providerCost, EVENT_COUNT * 1000000000L / directCost));
+    }
+}
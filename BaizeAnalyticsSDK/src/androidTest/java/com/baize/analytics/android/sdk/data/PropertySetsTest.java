@@ -0,0 +1,201 @@
+/*
+ * Created by bkb on 2020/06/12.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PropertySetsTest {
+    private static final String TAG = "PropertySetsTest";
+    private static final String[] SHARED_KEYS = {"$lib", "$lib_version", "$os", "$os_version", "$manufacturer",
+            "$model", "$app_version", "$screen_width", "$screen_height", "$carrier", "$device_id", "channel",
+            "user_level"};
+    private final Map<String, String> storage = new HashMap<>();
+    private PropertySets propertySets;
+
+    @Before
+    public void setUp() {
+        storage.clear();
+        propertySets = new PropertySets(new PropertySets.Storage() {
+            @Override
+            public void save(String hash, String data) {
+                storage.put(hash, data);
+            }
+
+            @Override
+            public String load(String hash) {
+                return storage.get(hash);
+            }
+
+            @Override
+            public void prune() {
+                // 测试中没有 Event 表，所有属性集合都视为没有被引用
+                storage.clear();
+            }
+        });
+        propertySets.setSharedKeys(Arrays.asList(SHARED_KEYS));
+    }
+
+    @Test
+    public void encodeAndExpand() throws Exception {
+        JSONObject event = newEvent(1);
+        byte[] data = propertySets.encode(event);
+        assertTrue(data.length < EventRecords.serialize(event).length);
+        assertTrue(PropertySets.isInterned(data));
+        assertEquals(1, storage.size());
+        assertEquals(storage.keySet().iterator().next(), PropertySets.hashOf(data));
+
+        String content = new String(data, EventRecords.CHARSET);
+        JSONObject decoded = new JSONObject(propertySets.expand(content));
+        assertEquals(event.getString("event"), decoded.getString("event"));
+        JSONObject properties = event.getJSONObject("properties");
+        JSONObject decodedProperties = decoded.getJSONObject("properties");
+        assertEquals(properties.length(), decodedProperties.length());
+        for (String key : SHARED_KEYS) {
+            assertEquals(properties.get(key), decodedProperties.get(key));
+        }
+        assertEquals(1, decodedProperties.getInt("index"));
+
+        // 相同的属性集合只保存一次
+        propertySets.encode(newEvent(2));
+        assertEquals(1, storage.size());
+
+        // 没有公共属性的事件不提取
+        byte[] plain = propertySets.encode(new JSONObject().put("event", "test"));
+        assertFalse(PropertySets.isInterned(plain));
+        assertNull(PropertySets.hashOf(plain));
+        // 属性集合丢失时丢弃
+        propertySets.prune();
+        assertNull(propertySets.expand(content));
+    }
+
+    @Test
+    public void expandBytes() throws Exception {
+        JSONObject event = newEvent(1);
+        byte[] data = propertySets.encode(event);
+        String content = new String(data, EventRecords.CHARSET);
+        // 按字节插入属性集合，与解析后还原的结果一致
+        JSONObject spliced = new JSONObject(new String(propertySets.expand(data), EventRecords.CHARSET));
+        JSONObject expanded = new JSONObject(propertySets.expand(content));
+        assertFalse(spliced.has("_ps"));
+        assertEquals(expanded.length(), spliced.length());
+        assertEquals(event.getLong("_track_id"), spliced.getLong("_track_id"));
+        JSONObject properties = event.getJSONObject("properties");
+        JSONObject splicedProperties = spliced.getJSONObject("properties");
+        assertEquals(properties.length(), splicedProperties.length());
+        Iterator<String> iterator = properties.keys();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            assertEquals(properties.get(key), splicedProperties.get(key));
+        }
+
+        // 只有公共属性的事件
+        JSONObject sharedOnly = new JSONObject().put("event", "test")
+                .put("properties", new JSONObject().put("$lib", "Android").put("$os", "Android"));
+        JSONObject decoded = new JSONObject(new String(propertySets.expand(propertySets.encode(sharedOnly)), EventRecords.CHARSET));
+        assertEquals(2, decoded.getJSONObject("properties").length());
+
+        // 旧版本写入的数据 properties 不紧跟在 _ps 之后
+        String hash = PropertySets.hashOf(data);
+        JSONObject legacy = new JSONObject().put("_ps", hash).put("event", "test")
+                .put("properties", new JSONObject().put("index", 2));
+        decoded = new JSONObject(new String(propertySets.expand(legacy.toString().getBytes(EventRecords.CHARSET)), EventRecords.CHARSET));
+        assertEquals(2, decoded.getJSONObject("properties").getInt("index"));
+        assertEquals("Android", decoded.getJSONObject("properties").getString("$lib"));
+
+        // 属性集合丢失时丢弃
+        propertySets.prune();
+        assertNull(propertySets.expand(data));
+    }
+
+    /**
+     * 对比提取属性前后每 MB 可存储的事件条数
+     */
+    @Test
+    public void rowsPerMegabyte() throws Exception {
+        int count = 1000;
+        long plainBytes = 0;
+        long internedBytes = 0;
+        for (int i = 0; i < count; i++) {
+            JSONObject event = newEvent(i);
+            plainBytes += EventRecords.serialize(event).length;
+            internedBytes += propertySets.encode(event).length;
+        }
+        for (String data : storage.values()) {
+            internedBytes += data.getBytes("UTF-8").length;
+        }
+        long plainRows = count * 1024L * 1024L / plainBytes;
+        long internedRows = count * 1024L * 1024L / internedBytes;
+        Log.i(TAG, String.format("rows per MB: %d -> %d", plainRows, internedRows));
+        assertTrue(internedRows > plainRows);
+    }
+
+    private static JSONObject newEvent(int index) throws Exception {
+        JSONObject properties = new JSONObject();
+        properties.put("$lib", "Android");
+        properties.put("$lib_version", "4.0.0");
+        properties.put("$os", "Android");
+        properties.put("$os_version", "10");
+        properties.put("$manufacturer", "Google");
+        properties.put("$model", "Pixel 3");
+        properties.put("$app_version", "1.0.0");
+        properties.put("$screen_width", 1080);
+        properties.put("$screen_height", 2160);
+        properties.put("$carrier", "中国移动");
+        properties.put("$device_id", "e3f4a5b6c7d8e9f0");
+        properties.put("$wifi", true);
+        properties.put("$network_type", "WIFI");
+        properties.put("channel", "official");
+        properties.put("user_level", 3);
+        properties.put("$screen_name", "com.example.MainActivity");
+        properties.put("$element_content", "button " + index);
+        properties.put("index", index);
+
+        JSONObject lib = new JSONObject();
+        lib.put("$lib", "Android");
+        lib.put("$lib_version", "4.0.0");
+        lib.put("$lib_method", "code");
+
+        JSONObject event = new JSONObject();
+        event.put("_track_id", 1000L + index);
+        event.put("time", System.currentTimeMillis());
+        event.put("type", "track");
+        event.put("distinct_id", "e3f4a5b6c7d8e9f0");
+        event.put("lib", lib);
+        event.put("event", "$AppClick");
+        event.put("properties", properties);
+        return event;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Created by bkb on 2020/06/08.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.util;
+
+import android.util.Log;
+
+import com.baize.analytics.android.sdk.exceptions.InvalidDataException;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BzDataHelperTest {
+    private static final String TAG = "BzDataHelperTest";
+    private static final int ITERATIONS = 10000;
+    /* 替换前使用的正则，作为校验结果和性能的对照 */
+    private static final Pattern LEGACY_KEY_PATTERN = Pattern.compile(
+            "^((?!^distinct_id$|^original_id$|^device_id$|^time$|^properties$|^id$|^first_id$|^second_id$|^users$|^events$|^event$|^user_id$|^date$|^datetime$)[a-zA-Z_$][a-zA-Z\\d_$]{0,99})$",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 测试 key 校验结果与替换前的正则一致
+     */
+    @Test
+    public void isValidKey_sameAsLegacyPattern() {
+        StringBuilder longKey = new StringBuilder();
+        for (int i = 0; i < 101; i++) {
+            longKey.append('a');
+        }
+        String[] keys = {"a", "$lib", "_abc", "abc_123$", "1abc", "a-b", "a b", "中文", "distinct_id",
+                "Distinct_ID", "time", "times", "DateTime", "user_id1", longKey.toString(),
+                longKey.substring(1)};
+        for (String key : keys) {
+            assertEquals(key, LEGACY_KEY_PATTERN.matcher(key).matches(), BzDataHelper.isValidKey(key));
+        }
+    }
+
+    /**
+     * 测试一次遍历内完成类型校验、截断和 Date 格式化
+     */
+    @Test
+    public void assertPropertyTypes_truncateAndFormatDate() throws Exception {
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 9000; i++) {
+            longValue.append('a');
+        }
+        JSONObject properties = new JSONObject();
+        properties.put("long_value", longValue.toString());
+        properties.put("date", new Date());
+        properties.put("$date_value", new Date());
+        try {
+            BzDataHelper.assertPropertyTypes(properties, true);
+            fail("reserved key should be rejected");
+        } catch (InvalidDataException e) {
+            // expected
+        }
+
+        properties.remove("date");
+        BzDataHelper.assertPropertyTypes(properties, true);
+        assertEquals(8192, properties.getString("long_value").length());
+        assertTrue(properties.get("$date_value") instanceof String);
+    }
+
+    /**
+     * 对照替换前的两次遍历（正则校验 + 回调后的再次校验）与当前实现的耗时，结果输出到 logcat
+     */
+    @Test
+    public void benchmark() throws Exception {
+        JSONObject properties = new JSONObject();
+        for (int i = 0; i < 20; i++) {
+            properties.put("property_key_" + i, "value_" + i);
+        }
+        properties.put("$screen_name", "com.example.MainActivity");
+        properties.put("$element_type", "Button");
+
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                legacyValidate(properties);
+                legacyValidate(properties);
+            }
+            long legacyCost = (System.nanoTime() - start) / ITERATIONS;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                BzDataHelper.assertPropertyTypes(properties, true);
+            }
+            long cost = (System.nanoTime() - start) / ITERATIONS;
+            if (round > 0) {
+                Log.i(TAG, String.format("legacy: %d ns/event, current: %d ns/event", legacyCost, cost));
+            }
+        }
+    }
+
+    private static void legacyValidate(JSONObject properties) throws Exception {
+        for (Iterator<String> iterator = properties.keys(); iterator.hasNext(); ) {
+            String key = iterator.next();
+            if (!LEGACY_KEY_PATTERN.matcher(key).matches()) {
+                throw new InvalidDataException("The key '" + key + "' is invalid.");
+            }
+            Object value = properties.get(key);
+            if (value instanceof String && ((String) value).length() > 8191) {
+                properties.put(key, ((String) value).substring(0, 8191) + "$");
+            }
+        }
+    }
+}
@@ -125,4 +125,64 @@ abstract class AbstractSAConfigOptions {
      * 是否使用上次启动时保存的 utm 属性.
      */
     boolean mEnableSaveDeepLinkInfo = false;
+
+    /**
+     * 事件任务队列容量
+     */
+    int mTrackTaskQueueCapacity = TrackTaskManager.DEFAULT_CAPACITY;
+
+    /**
+     * 事件任务队列满时的处理策略
+     */
+    int mTrackTaskQueueOverflowPolicy = BaizeQueueOverflowPolicy.DROP_LOWEST_PRIORITY;
+
+    /**
+     * $lib_detail 调用位置的采集方式
+     */
+    int mCallSiteMode = BaizeCallSiteMode.CACHED;
+
+    /**
+     * SAMPLED 模式下的采样间隔
+     */
+    int mCallSiteSampleRate = 100;
+
+    /**
+     * 事件写缓冲的条数上限
+     */
+    int mEventCommitMaxCount = 20;
+
+    /**
+     * 事件写缓冲的等待时间上限，单位毫秒
+     */
+    int mEventCommitInterval = 500;
+
+    /**
+     * 事件的存储方式
+     */
+    int mEventStoreType = BaizeEventStoreType.SQLITE;
+
+    /**
+     * WiFi、4G、5G 网络下每次上报的事件字节数上限（压缩前），3G、2G 网络下按比例减小
+     */
+    int mFlushBatchSize = 256 * 1024;
+
+    /**
+     * 是否以流的方式上报，gzip 压缩和编码后直接写入连接，使用 chunked 传输
+     */
+    boolean mStreamingUpload = false;
+
+    /**
+     * 上报请求体的格式
+     */
+    int mUploadFormat = BaizeUploadFormat.FORM;
+
+    /**
+     * 上报事件的网络传输，为 null 时使用默认的 HttpURLConnection
+     */
+    BaizeTransport mTransport;
+
+    /**
+     * 同时上报的批次数
+     */
+    int mFlushWindowSize = 1;
 }
\ No newline at end of file
@@ -32,29 +32,30 @@ import com.baize.analytics.android.sdk.exceptions.DebugModeException;
 import com.baize.analytics.android.sdk.exceptions.InvalidDataException;
 import com.baize.analytics.android.sdk.exceptions.ResponseErrorException;
 import com.baize.analytics.android.sdk.util.Base64Coder;
+import com.baize.analytics.android.sdk.util.BaizeUtils;
 import com.baize.analytics.android.sdk.util.JSONUtils;
+import com.baize.analytics.android.sdk.util.NetworkStateCache;
 import com.baize.analytics.android.sdk.util.NetworkUtils;
 import com.baize.analytics.android.sdk.data.DbAdapter;
+import com.baize.analytics.android.sdk.data.EventBatch;
+import com.baize.analytics.android.sdk.data.EventStore;
 import com.baize.analytics.android.sdk.data.DbParams;
 
 import org.json.JSONObject;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.zip.GZIPOutputStream;
 
-import javax.net.ssl.HttpsURLConnection;
-
-
 /**
  * Manage communication of events with the internal database and the Baize servers.
  * This class straddles the thread boundary between user threads and
@@ -64,31 +65,65 @@ class AnalyticsMessages {
     private static final String TAG = "SA.AnalyticsMessages";
     private static final int FLUSH_QUEUE = 3;
     private static final int DELETE_ALL = 4;
+    private static final int COMMIT_EVENTS = 5;
+    private static final int MIGRATE_EVENTS = 6;
+    /* 每次上报的条数上限，主要由字节数上限控制 */
+    private static final int MAX_BATCH_COUNT = 500;
+    /* GZIP 格式下未压缩数据的 CRC32，8 位十六进制 */
+    static final String HEADER_CRC32 = "X-Baize-Crc32";
+    /* HttpURLConnection 中没有 429 的常量 */
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
     private static final Map<Context, AnalyticsMessages> S_INSTANCES = new HashMap<>();
     private final Worker mWorker;
     private final Context mContext;
-    private final DbAdapter mDbAdapter;
+    private final EventStore mEventStore;
+    /* 写缓冲，通过 mEventStore 加锁访问 */
+    private final List<JSONObject> mPendingEvents = new ArrayList<>();
+    private int mCommitMaxCount = 1;
+    /* 每次上报的字节数上限，见 getBatchSize */
+    private volatile int mFlushBatchSize = 256 * 1024;
+    /* 是否以流的方式上报，见 writeStreamingBody */
+    private volatile boolean mStreamingUpload = false;
+    /* 请求体的格式，参考 BaizeUploadFormat */
+    private volatile int mUploadFormat = BaizeUploadFormat.FORM;
+    private volatile BaizeTransport mTransport = new HttpURLConnectionTransport();
+    /* 同时上报的批次数，见 UploadPipeline */
+    private volatile int mFlushWindowSize = 1;
+    private final UploadPipeline mUploadPipeline;
+    /* 失败后的重试调度，在 Worker 线程中首次上报时读取保存的状态 */
+    private volatile FlushRetryScheduler mRetryScheduler;
+    /* debug 模式下提示上报错误，debug 模式只在 Worker 线程中上报 */
+    private Toast mToast;
+    private int mCommitInterval = 0;
 
     /**
-     * 不要直接调用，通过 getInstance 方法获取实例
+     * 不要直接调用，通过 getInstance 方法获取实例，测试中使用单独的 EventStore 时直接创建
      */
-    private AnalyticsMessages(final Context context) {
+    AnalyticsMessages(final Context context, final EventStore eventStore) {
         mContext = context;
-        mDbAdapter = DbAdapter.getInstance();
+        mEventStore = eventStore;
+        mUploadPipeline = new UploadPipeline(eventStore);
         mWorker = new Worker();
+        if (eventStore instanceof DbAdapter) {
+            // 老版本数据库中的事件在存储线程中分批迁移
+            final Message m = Message.obtain();
+            m.what = MIGRATE_EVENTS;
+            mWorker.runMessage(m);
+        }
     }
 
     /**
      * 获取 AnalyticsMessages 对象
      *
      * @param messageContext Context
+     * @param eventStore 事件存储，只在首次创建实例时使用
      */
-    public static AnalyticsMessages getInstance(final Context messageContext) {
+    public static AnalyticsMessages getInstance(final Context messageContext, final EventStore eventStore) {
         synchronized (S_INSTANCES) {
             final Context appContext = messageContext.getApplicationContext();
             final AnalyticsMessages ret;
             if (!S_INSTANCES.containsKey(appContext)) {
-                ret = new AnalyticsMessages(appContext);
+                ret = new AnalyticsMessages(appContext, eventStore);
                 S_INSTANCES.put(appContext, ret);
             } else {
                 ret = S_INSTANCES.get(appContext);
@@ -97,53 +132,188 @@ class AnalyticsMessages {
         }
     }
 
-    private static byte[] slurp(final InputStream inputStream)
-            throws IOException {
-        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    /**
+     * 事件先进入写缓冲，达到条数上限、等待时间上限或者遇到需要立即落库的事件时，
+     * 在一个数据库事务中批量写入
+     *
+     * @param type 事件类型
+     * @param eventJson 事件
+     */
+    void enqueueEventMessage(final String type, final JSONObject eventJson) {
+        try {
+            synchronized (mEventStore) {
+                mPendingEvents.add(eventJson);
+                // track_signup 立即发送
+                boolean flushImmediately = type.equals("track_signup");
+                if (mPendingEvents.size() >= mCommitMaxCount
+                        || isCommitImmediately(type, eventJson.optString("event"), BaizeAPI.sharedInstance(mContext).isDebugMode())) {
+                    int ret = commitPendingEvents();
+                    if (ret < 0 && BaizeAPI.sharedInstance(mContext).isDebugMode()) {
+                        throw new DebugModeException("Failed to enqueue the event: " + eventJson);
+                    }
+                    scheduleFlush(ret, flushImmediately);
+                } else {
+                    final Message m = Message.obtain();
+                    m.what = COMMIT_EVENTS;
+                    mWorker.runMessageOnce(m, mCommitInterval);
+                }
+            }
+        } catch (Exception e) {
+            BzLog.i(TAG, "enqueueEventMessage error:" + e);
+        }
+    }
 
-        int nRead;
-        byte[] data = new byte[8192];
+    /**
+     * 批量入库，所有事件在一个数据库事务中写入，只做一次上报判断
+     *
+     * @param eventJsonList 事件列表
+     */
+    void enqueueEventMessages(final List<JSONObject> eventJsonList) {
+        try {
+            synchronized (mEventStore) {
+                mPendingEvents.addAll(eventJsonList);
+                int ret = commitPendingEvents();
+                if (ret < 0 && BaizeAPI.sharedInstance(mContext).isDebugMode()) {
+                    throw new DebugModeException("Failed to enqueue " + eventJsonList.size() + " events");
+                }
+                scheduleFlush(ret, false);
+            }
+        } catch (Exception e) {
+            BzLog.i(TAG, "enqueueEventMessages error:" + e);
+        }
+    }
 
-        while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
-            buffer.write(data, 0, nRead);
+    /**
+     * 设置写缓冲的条数上限和等待时间上限
+     *
+     * @param maxCount 条数上限，为 1 时每条事件直接写入
+     * @param interval 等待时间上限，单位毫秒
+     */
+    void setCommitPolicy(int maxCount, int interval) {
+        synchronized (mEventStore) {
+            mCommitMaxCount = Math.max(1, maxCount);
+            mCommitInterval = Math.max(0, interval);
         }
+    }
 
-        buffer.flush();
-        return buffer.toByteArray();
+    /**
+     * 设置每次上报的字节数上限
+     *
+     * @param flushBatchSize WiFi、4G、5G 网络下的字节数上限（压缩前）
+     */
+    void setFlushBatchSize(int flushBatchSize) {
+        mFlushBatchSize = flushBatchSize;
     }
 
-    void enqueueEventMessage(final String type, final JSONObject eventJson) {
-        try {
-            synchronized (mDbAdapter) {
-                int ret = mDbAdapter.addJSON(eventJson);
-                if (ret < 0) {
-                    String error = "Failed to enqueue the event: " + eventJson;
-                    if (BaizeAPI.sharedInstance(mContext).isDebugMode()) {
-                        throw new DebugModeException(error);
-                    } else {
-                        BzLog.i(TAG, error);
-                    }
-                }
+    /**
+     * 设置是否以流的方式上报
+     *
+     * @param streamingUpload 是否以流的方式上报
+     */
+    void setStreamingUpload(boolean streamingUpload) {
+        mStreamingUpload = streamingUpload;
+    }
 
-                final Message m = Message.obtain();
-                m.what = FLUSH_QUEUE;
+    /**
+     * 设置上报请求体的格式
+     *
+     * @param uploadFormat 请求体的格式，参考 {@link BaizeUploadFormat}
+     */
+    void setUploadFormat(int uploadFormat) {
+        mUploadFormat = uploadFormat;
+    }
 
-                if (BaizeAPI.sharedInstance(mContext).isDebugMode() || ret ==
-                        DbParams.DB_OUT_OF_MEMORY_ERROR) {
-                    mWorker.runMessage(m);
-                } else {
-                    // track_signup 立即发送
-                    if (type.equals("track_signup") || ret > BaizeAPI.sharedInstance(mContext)
-                            .getFlushBulkSize()) {
-                        mWorker.runMessage(m);
-                    } else {
-                        final int interval = BaizeAPI.sharedInstance(mContext).getFlushInterval();
-                        mWorker.runMessageOnce(m, interval);
-                    }
-                }
+    /**
+     * 设置上报事件的网络传输
+     *
+     * @param transport 网络传输，为 null 时使用默认的 HttpURLConnection
+     */
+    void setTransport(BaizeTransport transport) {
+        mTransport = transport == null ? new HttpURLConnectionTransport() : transport;
+    }
+
+    /**
+     * 设置同时上报的批次数
+     *
+     * @param flushWindowSize 批次数，范围 1 到 {@link UploadPipeline#MAX_WINDOW}
+     */
+    void setFlushWindowSize(int flushWindowSize) {
+        mFlushWindowSize = flushWindowSize;
+    }
+
+    /**
+     * 根据网络类型获取每次上报的字节数上限，弱网下减小每次请求的数据量
+     *
+     * @param networkType 网络类型
+     * @return 字节数上限
+     */
+    private long getBatchSize(String networkType) {
+        if ("3G".equals(networkType)) {
+            return mFlushBatchSize / 4;
+        } else if ("2G".equals(networkType)) {
+            return mFlushBatchSize / 16;
+        }
+        return mFlushBatchSize;
+    }
+
+    /**
+     * 将写缓冲中的事件同步写入数据库
+     *
+     * @return 入库后的数据条数或错误码，没有待写入的事件时返回 0
+     */
+    int commitPendingEvents() {
+        synchronized (mEventStore) {
+            int size = mPendingEvents.size();
+            if (size == 0) {
+                return 0;
+            }
+            int ret;
+            if (size == 1) {
+                ret = mEventStore.append(mPendingEvents.get(0));
+            } else {
+                ret = mEventStore.append(new ArrayList<>(mPendingEvents));
+            }
+            mPendingEvents.clear();
+            if (ret < 0) {
+                BzLog.i(TAG, "Failed to enqueue " + size + " events");
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * 是否跳过写缓冲立即落库：track_signup 需要立即上报，debug 模式下逐条校验，
+     * $AppEnd 和 AppCrashed 之后进程可能很快退出
+     *
+     * @param type 事件类型
+     * @param eventName 事件名
+     * @param debugMode 是否为 debug 模式
+     */
+    static boolean isCommitImmediately(String type, String eventName, boolean debugMode) {
+        return debugMode || "track_signup".equals(type) || "$AppEnd".equals(eventName) || "AppCrashed".equals(eventName);
+    }
+
+    /**
+     * 根据入库结果判断立即上报还是延迟上报
+     *
+     * @param ret 入库后的数据条数或错误码
+     * @param flushImmediately 是否立即上报
+     */
+    private void scheduleFlush(int ret, boolean flushImmediately) {
+        final Message m = Message.obtain();
+        m.what = FLUSH_QUEUE;
+
+        if (BaizeAPI.sharedInstance(mContext).isDebugMode() || ret ==
+                DbParams.DB_OUT_OF_MEMORY_ERROR) {
+            mWorker.runMessage(m);
+        } else {
+            if (flushImmediately || ret > BaizeAPI.sharedInstance(mContext)
+                    .getFlushBulkSize()) {
+                mWorker.runMessage(m);
+            } else {
+                final int interval = BaizeAPI.sharedInstance(mContext).getFlushInterval();
+                mWorker.runMessageOnce(m, interval);
             }
-        } catch (Exception e) {
-            BzLog.i(TAG, "enqueueEventMessage error:" + e);
         }
     }
 
@@ -186,12 +356,12 @@ class AnalyticsMessages {
             }
 
             //无网络
-            if (!NetworkUtils.isNetworkAvailable(mContext)) {
+            if (!NetworkStateCache.getInstance().isNetworkAvailable(mContext)) {
                 return;
             }
 
             //不符合同步数据的网络策略
-            String networkType = NetworkUtils.networkType(mContext);
+            String networkType = NetworkStateCache.getInstance().networkType(mContext);
             if (!NetworkUtils.isShouldFlush(networkType, BaizeAPI.sharedInstance(mContext).getFlushNetworkPolicy())) {
                 BzLog.i(TAG, String.format("您当前网络为 %s，无法发送数据，请确认您的网络发送策略！", networkType));
                 return;
@@ -199,150 +369,158 @@ class AnalyticsMessages {
         } catch (Exception e) {
             BzLog.printStackTrace(e);
         }
-        int count = 100;
-        Toast toast = null;
-        while (count > 0) {
-            boolean deleteEvents = true;
-            String[] eventsData;
-            synchronized (mDbAdapter) {
-                if (BaizeAPI.sharedInstance(mContext).isDebugMode()) {
+        if (mRetryScheduler == null) {
+            mRetryScheduler = new FlushRetryScheduler(BaizeUtils.getSharedPreferences(mContext), new Random());
+        }
+        final boolean isDebugMode = BaizeAPI.sharedInstance(mContext).isDebugMode();
+        long retryDelay = isDebugMode ? 0 : mRetryScheduler.getDelay(System.currentTimeMillis());
+        if (retryDelay > 0) {
+            BzLog.i(TAG, "Flush is backing off, retry in " + retryDelay + " ms");
+            scheduleRetry(retryDelay);
+            return;
+        }
+        final long batchSize = getBatchSize(NetworkStateCache.getInstance().networkType(mContext));
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        mUploadPipeline.drain(new UploadPipeline.BatchReader() {
+            @Override
+            public EventBatch read(String afterId) {
+                if (isDebugMode) {
                     /* debug 模式下服务器只允许接收 1 条数据 */
-                    eventsData = mDbAdapter.generateDataString(DbParams.TABLE_EVENTS, 1);
-                } else {
-                    eventsData = mDbAdapter.generateDataString(DbParams.TABLE_EVENTS, 50);
+                    return mEventStore.peek(afterId, 1, 0);
                 }
+                return mEventStore.peek(afterId, MAX_BATCH_COUNT, batchSize);
             }
-            if (eventsData == null) {
-                return;
+        }, new UploadPipeline.Uploader() {
+            @Override
+            public boolean upload(EventBatch batch) {
+                boolean deleteEvents = uploadBatch(batch);
+                if (!deleteEvents) {
+                    failed.set(true);
+                }
+                return deleteEvents;
             }
+        }, isDebugMode || mRetryScheduler.isRetrying() ? 1 : mFlushWindowSize);
+        if (failed.get()) {
+            scheduleRetry(mRetryScheduler.onFailure(System.currentTimeMillis()));
+        } else {
+            mRetryScheduler.onSuccess();
+        }
+    }
 
-            final String lastId = eventsData[0];
-            final String rawMessage = eventsData[1];
-            String errorMessage = null;
+    /**
+     * 退避结束后重新上报
+     *
+     * @param delay 延迟时长
+     */
+    private void scheduleRetry(long delay) {
+        final Message m = Message.obtain();
+        m.what = FLUSH_QUEUE;
+        mWorker.runMessageOnce(m, delay);
+    }
 
-            try {
-                String data;
+    /**
+     * 上报一批事件并处理错误，窗口大于 1 时在上报线程中调用
+     *
+     * @param batch 事件
+     * @return 是否删除这批事件
+     */
+    private boolean uploadBatch(EventBatch batch) {
+        boolean deleteEvents = true;
+        String errorMessage = null;
+        boolean isDebugMode = BaizeAPI.sharedInstance(mContext).isDebugMode();
+        try {
+            byte[] body = null;
+            if (!mStreamingUpload) {
                 try {
-                    data = encodeData(rawMessage);
+                    body = encodeBody(batch.getData(), mUploadFormat);
                 } catch (Exception e) {
                     // 格式错误，直接将数据删除
                     throw new InvalidDataException(e);
                 }
-                sendHttpRequest(BaizeAPI.sharedInstance(mContext).getServerUrl(), data, rawMessage, false);
-            } catch (ConnectErrorException e) {
-                deleteEvents = false;
-                errorMessage = "Connection error: " + e.getMessage();
-            } catch (InvalidDataException e) {
-                errorMessage = "Invalid data: " + e.getMessage();
-            } catch (ResponseErrorException e) {
-                deleteEvents = isDeleteEventsByCode(e.getHttpCode());
-                errorMessage = "ResponseErrorException: " + e.getMessage();
-            } catch (Exception e) {
-                deleteEvents = false;
-                errorMessage = "Exception: " + e.getMessage();
-            } finally {
-                boolean isDebugMode = BaizeAPI.sharedInstance(mContext).isDebugMode();
-                if (!TextUtils.isEmpty(errorMessage)) {
-                    if (isDebugMode || BzLog.isLogEnabled()) {
-                        BzLog.i(TAG, errorMessage);
-                        if (isDebugMode && BaizeAPI.SHOW_DEBUG_INFO_VIEW) {
-                            try {
-                                /*
-                                 * 问题：https://www.jianshu.com/p/1445e330114b
-                                 * 目前没有比较好的解决方案，暂时规避，只对开启 debug 模式下有影响
-                                 */
-                                if (Build.VERSION.SDK_INT != 25) {
-                                    if (toast != null) {
-                                        toast.cancel();
-                                    }
-                                    toast = Toast.makeText(mContext, errorMessage, Toast.LENGTH_SHORT);
-                                    toast.show();
-                                }
-                            } catch (Exception e) {
-                                BzLog.printStackTrace(e);
+            }
+            sendHttpRequest(BaizeAPI.sharedInstance(mContext).getServerUrl(), body, batch, false);
+        } catch (ConnectErrorException e) {
+            deleteEvents = false;
+            errorMessage = "Connection error: " + e.getMessage();
+        } catch (InvalidDataException e) {
+            errorMessage = "Invalid data: " + e.getMessage();
+        } catch (ResponseErrorException e) {
+            deleteEvents = isDeleteEventsByCode(e.getHttpCode());
+            errorMessage = "ResponseErrorException: " + e.getMessage();
+        } catch (Exception e) {
+            deleteEvents = false;
+            errorMessage = "Exception: " + e.getMessage();
+        }
+        if (!TextUtils.isEmpty(errorMessage)) {
+            if (isDebugMode || BzLog.isLogEnabled()) {
+                BzLog.i(TAG, errorMessage);
+                if (isDebugMode && BaizeAPI.SHOW_DEBUG_INFO_VIEW) {
+                    try {
+                        /*
+                         * 问题：https://www.jianshu.com/p/1445e330114b
+                         * 目前没有比较好的解决方案，暂时规避，只对开启 debug 模式下有影响
+                         */
+                        if (Build.VERSION.SDK_INT != 25) {
+                            if (mToast != null) {
+                                mToast.cancel();
                             }
+                            mToast = Toast.makeText(mContext, errorMessage, Toast.LENGTH_SHORT);
+                            mToast.show();
                         }
+                    } catch (Exception e) {
+                        BzLog.printStackTrace(e);
                     }
                 }
-
-                if (deleteEvents || isDebugMode) {
-                    count = mDbAdapter.cleanupEvents(lastId);
-                    BzLog.i(TAG, String.format(Locale.CHINA, "Events flushed. [left = %d]", count));
-                } else {
-                    count = 0;
-                }
-
             }
         }
+        return deleteEvents || isDebugMode;
     }
 
-    private void sendHttpRequest(String path, String data, String rawMessage, boolean isRedirects) throws ConnectErrorException, ResponseErrorException {
-        HttpURLConnection connection = null;
-        InputStream in = null;
-        OutputStream out = null;
-        BufferedOutputStream bout = null;
+    /**
+     * 上报一批事件
+     *
+     * @param path 上报地址
+     * @param body 编码后的请求体，为 null 时以流的方式上报 batch
+     * @param batch 事件
+     * @param isRedirects 是否为重定向后的请求
+     */
+    private void sendHttpRequest(String path, final byte[] body, final EventBatch batch, boolean isRedirects) throws ConnectErrorException, ResponseErrorException {
         BzLog.i(TAG, "request:" + path);
         try {
-            final URL url = new URL(path);
-            connection = (HttpURLConnection) url.openConnection();
-            if (connection == null) {
-                BzLog.i(TAG, String.format("can not connect %s, it shouldn't happen", url.toString()), null);
-                return;
-            }
-            if (BaizeAPI.sharedInstance().getSSLSocketFactory() != null && connection instanceof HttpsURLConnection) {
-                ((HttpsURLConnection) connection).setSSLSocketFactory(BaizeAPI.sharedInstance().getSSLSocketFactory());
-            }
-            connection.setInstanceFollowRedirects(false);
+            BaizeTransport.Request request = new BaizeTransport.Request(path, body == null ? -1 : body.length, new BaizeTransport.Body() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    if (body == null) {
+                        writeStreamingBody(out, batch);
+                    } else {
+                        out.write(body);
+                    }
+                }
+            });
             if (BaizeAPI.sharedInstance(mContext).getDebugMode() == BaizeAPI.DebugMode.DEBUG_ONLY) {
-                connection.addRequestProperty("Dry-Run", "true");
+                request.setHeader("Dry-Run", "true");
             }
-
-            connection.setRequestProperty("Cookie", BaizeAPI.sharedInstance(mContext).getCookie(false));
-
-            Uri.Builder builder = new Uri.Builder();
-            //先校验crc
-            if (!TextUtils.isEmpty(data)) {
-                builder.appendQueryParameter("crc", String.valueOf(data.hashCode()));
+            request.setHeader("Cookie", BaizeAPI.sharedInstance(mContext).getCookie(false));
+            if (mUploadFormat == BaizeUploadFormat.GZIP) {
+                request.setHeader("Content-Type", "application/json");
+                request.setHeader("Content-Encoding", "gzip");
+                request.setHeader(HEADER_CRC32, String.format(Locale.CHINA, "%08x", batch.getChecksum()));
             }
+            BaizeTransport.Response response = mTransport.execute(request);
 
-            builder.appendQueryParameter("gzip", "1");
-            builder.appendQueryParameter("data_list", data);
-
-            String query = builder.build().getEncodedQuery();
-            if (TextUtils.isEmpty(query)) {
-                return;
-            }
-
-            connection.setFixedLengthStreamingMode(query.getBytes(Base64Coder.CHARSET_UTF8).length);
-            connection.setDoOutput(true);
-            connection.setRequestMethod("POST");
-            out = connection.getOutputStream();
-            bout = new BufferedOutputStream(out);
-            bout.write(query.getBytes(Base64Coder.CHARSET_UTF8));
-            bout.flush();
-
-            int responseCode = connection.getResponseCode();
+            int responseCode = response.getCode();
             BzLog.i(TAG, "responseCode: " + responseCode);
             if (!isRedirects && BaizeHttpURLConnectionHelper.needRedirects(responseCode)) {
-                String location = BaizeHttpURLConnectionHelper.getLocation(connection, path);
+                String location = BaizeHttpURLConnectionHelper.getLocation(response.getHeader("Location"), path);
                 if (!TextUtils.isEmpty(location)) {
-                    closeStream(bout, out, null, connection);
-                    sendHttpRequest(location, data, rawMessage, true);
+                    sendHttpRequest(location, body, batch, true);
                     return;
                 }
             }
-            try {
-                in = connection.getInputStream();
-            } catch (FileNotFoundException e) {
-                in = connection.getErrorStream();
-            }
-            byte[] responseBody = slurp(in);
-            in.close();
-            in = null;
 
-            String response = new String(responseBody, Base64Coder.CHARSET_UTF8);
+            String responseBody = new String(response.getBody(), Base64Coder.CHARSET_UTF8);
             if (BzLog.isLogEnabled()) {
-                String jsonMessage = JSONUtils.formatJson(rawMessage);
+                String jsonMessage = JSONUtils.formatJson(batch.toString());
                 // 状态码 200 - 300 间都认为正确
                 if (responseCode >= HttpURLConnection.HTTP_OK &&
                         responseCode < HttpURLConnection.HTTP_MULT_CHOICE) {
@@ -350,23 +528,26 @@ class AnalyticsMessages {
                 } else {
                     BzLog.i(TAG, "invalid message: \n" + jsonMessage);
                     BzLog.i(TAG, String.format(Locale.CHINA, "ret_code: %d", responseCode));
-                    BzLog.i(TAG, String.format(Locale.CHINA, "ret_content: %s", response));
+                    BzLog.i(TAG, String.format(Locale.CHINA, "ret_content: %s", responseBody));
                 }
             }
             if (responseCode < HttpURLConnection.HTTP_OK || responseCode >= HttpURLConnection.HTTP_MULT_CHOICE) {
+                // 只有保留数据、会触发重试的状态码才记录 Retry-After，否则会延长之后无关失败的退避时长
+                FlushRetryScheduler retryScheduler = mRetryScheduler;
+                if (retryScheduler != null && !isDeleteEventsByCode(responseCode)) {
+                    retryScheduler.onRetryAfter(response.getHeader("Retry-After"), System.currentTimeMillis());
+                }
                 // 校验错误
                 throw new ResponseErrorException(String.format("flush failure with response '%s', the response code is '%d'",
-                        response, responseCode), responseCode);
+                        responseBody, responseCode), responseCode);
             }
         } catch (IOException e) {
             throw new ConnectErrorException(e);
-        } finally {
-            closeStream(bout, out, in, connection);
         }
     }
 
     /**
-     * 在服务器正常返回状态码的情况下，目前只有 (>= 500 && < 600) || 404 || 403 才不删数据
+     * 在服务器正常返回状态码的情况下，目前只有 (>= 500 && < 600) || 404 || 403 || 429 才不删数据
      *
      * @param httpCode 状态码
      * @return true: 删除数据，false: 不删数据
@@ -375,54 +556,62 @@ class AnalyticsMessages {
         boolean shouldDelete = true;
         if (httpCode == HttpURLConnection.HTTP_NOT_FOUND ||
                 httpCode == HttpURLConnection.HTTP_FORBIDDEN ||
+                httpCode == HTTP_TOO_MANY_REQUESTS ||
                 (httpCode >= HttpURLConnection.HTTP_INTERNAL_ERROR && httpCode < 600)) {
             shouldDelete = false;
         }
         return shouldDelete;
     }
 
-    private void closeStream(BufferedOutputStream bout, OutputStream out, InputStream in, HttpURLConnection connection) {
-        if (null != bout) {
-            try {
-                bout.close();
-            } catch (Exception e) {
-                BzLog.i(TAG, e.getMessage());
-            }
-        }
-
-        if (null != out) {
-            try {
-                out.close();
-            } catch (Exception e) {
-                BzLog.i(TAG, e.getMessage());
-            }
-        }
-
-        if (null != in) {
-            try {
-                in.close();
-            } catch (Exception e) {
-                BzLog.i(TAG, e.getMessage());
-            }
+    /**
+     * 以流的方式写入请求体：事件 JSON 经 gzip 压缩后直接写入，表单格式由 DataListOutputStream 编码，
+     * 内存占用只有压缩和编码的缓冲区，与批次大小无关
+     *
+     * @param out 连接的输出流
+     * @param batch 事件
+     */
+    private void writeStreamingBody(OutputStream out, EventBatch batch) throws IOException {
+        if (mUploadFormat == BaizeUploadFormat.GZIP) {
+            GZIPOutputStream gos = new GZIPOutputStream(out);
+            batch.writeTo(gos);
+            gos.finish();
+            return;
         }
+        DataListOutputStream dataList = new DataListOutputStream(out);
+        GZIPOutputStream gos = new GZIPOutputStream(dataList);
+        batch.writeTo(gos);
+        gos.finish();
+        dataList.finish();
+    }
 
-        if (null != connection) {
-            try {
-                connection.disconnect();
-            } catch (Exception e) {
-                BzLog.i(TAG, e.getMessage());
-            }
+    /**
+     * 编码请求体
+     *
+     * @param rawMessage 事件 JSON 数组的 UTF-8 字节
+     * @param uploadFormat 请求体的格式，参考 {@link BaizeUploadFormat}
+     * @return 请求体
+     */
+    static byte[] encodeBody(final byte[] rawMessage, int uploadFormat) throws IOException {
+        if (uploadFormat == BaizeUploadFormat.GZIP) {
+            return gzip(rawMessage);
         }
+        String data = new String(Base64Coder.encode(gzip(rawMessage)));
+        Uri.Builder builder = new Uri.Builder();
+        //先校验crc
+        builder.appendQueryParameter("crc", String.valueOf(data.hashCode()));
+        builder.appendQueryParameter("gzip", "1");
+        builder.appendQueryParameter("data_list", data);
+        return builder.build().getEncodedQuery().getBytes(Base64Coder.CHARSET_UTF8);
     }
 
-    private String encodeData(final String rawMessage) throws IOException {
-        ByteArrayOutputStream os = new ByteArrayOutputStream(rawMessage.getBytes(Base64Coder.CHARSET_UTF8).length);
+    private static byte[] gzip(final byte[] rawMessage) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream(rawMessage.length);
         GZIPOutputStream gos = new GZIPOutputStream(os);
-        gos.write(rawMessage.getBytes(Base64Coder.CHARSET_UTF8));
+        gos.write(rawMessage);
         gos.close();
         byte[] compressed = os.toByteArray();
         os.close();
-        return new String(Base64Coder.encode(compressed));
+        return compressed;
     }
 
     // Worker will manage the (at most single) IO thread associated with
@@ -475,10 +664,26 @@ class AnalyticsMessages {
             public void handleMessage(Message msg) {
                 try {
                     if (msg.what == FLUSH_QUEUE) {
+                        commitPendingEvents();
                         sendData();
+                    } else if (msg.what == COMMIT_EVENTS) {
+                        int ret = commitPendingEvents();
+                        if (ret != 0) {
+                            scheduleFlush(ret, false);
+                        }
+                    } else if (msg.what == MIGRATE_EVENTS) {
+                        if (((DbAdapter) mEventStore).migrateLegacyEvents()) {
+                            // 还有未迁移的数据，排到消息队列末尾继续，期间的写入和上报不被阻塞
+                            final Message m = Message.obtain();
+                            m.what = MIGRATE_EVENTS;
+                            mWorker.runMessage(m);
+                        }
                     } else if (msg.what == DELETE_ALL) {
                         try {
-                            mDbAdapter.deleteAllEvents();
+                            synchronized (mEventStore) {
+                                mPendingEvents.clear();
+                            }
+                            mEventStore.clear();
                         } catch (Exception e) {
                             BzLog.printStackTrace(e);
                         }
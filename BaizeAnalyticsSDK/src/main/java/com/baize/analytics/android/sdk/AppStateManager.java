@@ -22,6 +22,8 @@ import android.app.Activity;
 import android.app.Application;
 import android.os.Bundle;
 
+import com.baize.analytics.android.sdk.util.BaizeUtils;
+
 import java.lang.ref.WeakReference;
 
 @SuppressLint("NewApi")
@@ -85,6 +87,8 @@ public class AppStateManager implements Application.ActivityLifecycleCallbacks {
     @Override
     public void onActivityResumed(Activity activity) {
         setForegroundActivity(activity);
+        // 回到前台或权限弹框关闭后，重新检测权限
+        BaizeUtils.clearPermissionCache();
         if (!activity.isChild()) {
             mCurrentRootWindowsHashCode = activity.getWindow().getDecorView().hashCode();
         }
@@ -55,14 +55,19 @@ import com.baize.analytics.android.sdk.util.BzDataHelper;
 import com.baize.analytics.android.sdk.util.ChannelUtils;
 import com.baize.analytics.android.sdk.util.DateFormatUtils;
 import com.baize.analytics.android.sdk.util.JSONUtils;
-import com.baize.analytics.android.sdk.util.NetworkUtils;
+import com.baize.analytics.android.sdk.util.NetworkStateCache;
 import com.baize.analytics.android.sdk.data.DbAdapter;
+import com.baize.analytics.android.sdk.data.EventStore;
+import com.baize.analytics.android.sdk.data.FileEventStore;
+import com.baize.analytics.android.sdk.data.MappedEventStore;
+import com.baize.analytics.android.sdk.data.MemoryEventStore;
 import com.baize.analytics.android.sdk.data.PersistentLoader;
 import com.baize.analytics.android.sdk.data.persistent.PersistentDistinctId;
 import com.baize.analytics.android.sdk.data.persistent.PersistentFirstStart;
 import com.baize.analytics.android.sdk.data.persistent.PersistentFirstTrackInstallationWithCallback;
 import com.baize.analytics.android.sdk.data.persistent.PersistentRemoteSDKConfig;
 import com.baize.analytics.android.sdk.data.persistent.PersistentSuperProperties;
+import com.baize.analytics.android.sdk.data.persistent.PersistentTrackIdEpoch;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -75,7 +80,6 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
-import java.security.SecureRandom;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -88,6 +92,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
@@ -166,6 +171,14 @@ public class BaizeAPI implements IBaizeDataAPI {
     private BaizeTrackEventCallBack mTrackEventCallBack;
     private List<BzEventListener> mEventListenerList;
     private IFragmentAPI mFragmentAPI;
+    /* 基础属性模板，只在相关属性变化后重新构建 */
+    private volatile BasePropertiesTemplate mBasePropertiesTemplate;
+    private final AtomicInteger mBasePropertiesVersion = new AtomicInteger();
+    /* 初始化后重新获取到的运营商信息 */
+    private volatile String mCarrier;
+    /* $lib_detail 调用位置采集 */
+    private final CallSiteCapture mCallSiteCapture = new CallSiteCapture();
+    private TrackIdGenerator mTrackIdGenerator;
 
     //private
     BaizeAPI() {
@@ -199,14 +212,23 @@ public class BaizeAPI implements IBaizeDataAPI {
         mFirstTrackInstallationWithCallback = (PersistentFirstTrackInstallationWithCallback) PersistentLoader.loadPersistent(PersistentLoader.PersistentName.FIRST_INSTALL_CALLBACK);
         mPersistentRemoteSDKConfig = (PersistentRemoteSDKConfig) PersistentLoader.loadPersistent(PersistentLoader.PersistentName.REMOTE_CONFIG);
         mFirstDay = (PersistentFirstDay) PersistentLoader.loadPersistent(PersistentLoader.PersistentName.FIRST_DAY);
+        mTrackIdGenerator = new TrackIdGenerator(
+                (PersistentTrackIdEpoch) PersistentLoader.loadPersistent(PersistentLoader.PersistentName.TRACK_ID_EPOCH));
 
         mTrackTaskManager = TrackTaskManager.getInstance();
         mTrackTaskManagerThread = new TrackTaskManagerThread();
         new Thread(mTrackTaskManagerThread, ThreadNameConstants.THREAD_TASK_QUEUE).start();
         BaizeExceptionHandler.init();
         initSAConfig(serverURL, packageName);
-        DbAdapter.getInstance(context, packageName);
-        mMessages = AnalyticsMessages.getInstance(mContext);
+        DbAdapter.getInstance(context, packageName).setMultiProcess(mBzConfigOptions.mEnableMultiProcess);
+        NetworkStateCache.getInstance().register(mContext);
+        mMessages = AnalyticsMessages.getInstance(mContext, createEventStore());
+        mMessages.setCommitPolicy(mBzConfigOptions.mEventCommitMaxCount, mBzConfigOptions.mEventCommitInterval);
+        mMessages.setFlushBatchSize(mBzConfigOptions.mFlushBatchSize);
+        mMessages.setStreamingUpload(mBzConfigOptions.mStreamingUpload);
+        mMessages.setUploadFormat(mBzConfigOptions.mUploadFormat);
+        mMessages.setTransport(mBzConfigOptions.mTransport);
+        mMessages.setFlushWindowSize(mBzConfigOptions.mFlushWindowSize);
         mAndroidId = BaizeUtils.getAndroidID(mContext);
 
         //先从缓存中读取 SDKConfig
@@ -662,7 +684,7 @@ public class BaizeAPI implements IBaizeDataAPI {
             properties.put("$os_version", mDeviceInfo.get("$os_version"));
             properties.put("$screen_height", mDeviceInfo.get("$screen_height"));
             properties.put("$screen_width", mDeviceInfo.get("$screen_width"));
-            String networkType = NetworkUtils.networkType(mContext);
+            String networkType = NetworkStateCache.getInstance().networkType(mContext);
             properties.put("$wifi", "WIFI".equals(networkType));
             properties.put("$network_type", networkType);
             properties.put("$carrier", mDeviceInfo.get("$carrier"));
@@ -757,6 +779,7 @@ public class BaizeAPI implements IBaizeDataAPI {
 
             mGPSLocation.setLatitude((long) (latitude * Math.pow(10, 6)));
             mGPSLocation.setLongitude((long) (longitude * Math.pow(10, 6)));
+            invalidateBaseProperties();
         } catch (Exception e) {
             BzLog.printStackTrace(e);
         }
@@ -765,6 +788,7 @@ public class BaizeAPI implements IBaizeDataAPI {
     @Override
     public void clearGPSLocation() {
         mGPSLocation = null;
+        invalidateBaseProperties();
     }
 
     @Override
@@ -1600,7 +1624,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_HIGH);
     }
 
     @Override
@@ -1638,7 +1662,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_HIGH);
     }
 
     @Override
@@ -1660,7 +1684,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_HIGH);
     }
 
 //    @Deprecated
@@ -1836,7 +1860,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, getTaskPriority(eventName));
     }
 
     @Override
@@ -1850,6 +1874,40 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
+        }, getTaskPriority(eventName));
+    }
+
+    @Override
+    public void track(List<BaizeEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        final List<BaizeEvent> eventList = new ArrayList<>(events);
+        final String callSite = mCallSiteCapture.getLibDetail("track");
+        mTrackTaskManager.addTrackEventTask(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    List<JSONObject> eventJsonList = new ArrayList<>(eventList.size());
+                    for (BaizeEvent event : eventList) {
+                        if (event == null) {
+                            continue;
+                        }
+                        JSONObject dataObj = assembleEvent(EventType.TRACK, event.getEventName(), event.getProperties(), null, callSite);
+                        if (dataObj != null) {
+                            eventJsonList.add(dataObj);
+                            if (BzLog.isLogEnabled()) {
+                                BzLog.i(TAG, "track event:\n" + JSONUtils.formatJson(dataObj.toString()));
+                            }
+                        }
+                    }
+                    if (!eventJsonList.isEmpty()) {
+                        mMessages.enqueueEventMessages(eventJsonList);
+                    }
+                } catch (Exception e) {
+                    BzLog.printStackTrace(e);
+                }
+            }
         });
     }
 
@@ -2060,7 +2118,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_LOW);
     }
 
     @Override
@@ -2078,7 +2136,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_LOW);
     }
 
     @Override
@@ -2169,7 +2227,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_LOW);
     }
 
     @Override
@@ -2253,6 +2311,7 @@ public class BaizeAPI implements IBaizeDataAPI {
         mTrackTaskManager.addTrackEventTask(new Runnable() {
             @Override
             public void run() {
+                mMessages.commitPendingEvents();
                 mMessages.flush();
             }
         });
@@ -2280,7 +2339,7 @@ public class BaizeAPI implements IBaizeDataAPI {
     public void startTrackThread() {
         if (mTrackTaskManagerThread == null || mTrackTaskManagerThread.isStopped()) {
             mTrackTaskManagerThread = new TrackTaskManagerThread();
-            new Thread(mTrackTaskManagerThread).start();
+            new Thread(mTrackTaskManagerThread, ThreadNameConstants.THREAD_TASK_QUEUE).start();
             BzLog.i(TAG, "Data collection thread has been started");
         }
     }
@@ -2290,6 +2349,11 @@ public class BaizeAPI implements IBaizeDataAPI {
         mMessages.deleteAll();
     }
 
+    @Override
+    public long getDroppedEventCount() {
+        return mTrackTaskManager.getDroppedTaskCount();
+    }
+
     @Override
     public JSONObject getSuperProperties() {
         synchronized (mSuperProperties) {
@@ -2313,6 +2377,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                 JSONObject properties = mSuperProperties.get();
                 BaizeUtils.mergeSuperJSONObject(superProperties, properties);
                 mSuperProperties.commit(properties);
+                invalidateBaseProperties();
             }
         } catch (Exception e) {
             BzLog.printStackTrace(e);
@@ -2326,6 +2391,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                 JSONObject superProperties = mSuperProperties.get();
                 superProperties.remove(superPropertyName);
                 mSuperProperties.commit(superProperties);
+                invalidateBaseProperties();
             }
         } catch (Exception e) {
             BzLog.printStackTrace(e);
@@ -2336,6 +2402,7 @@ public class BaizeAPI implements IBaizeDataAPI {
     public void clearSuperProperties() {
         synchronized (mSuperProperties) {
             mSuperProperties.commit(new JSONObject());
+            invalidateBaseProperties();
         }
     }
 
@@ -2350,7 +2417,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_HIGH);
     }
 
     @Override
@@ -2364,7 +2431,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_HIGH);
     }
 
     @Override
@@ -2378,7 +2445,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_HIGH);
     }
 
     @Override
@@ -2392,7 +2459,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_HIGH);
     }
 
 //    @Override
@@ -2438,7 +2505,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_HIGH);
     }
 
     @Override
@@ -2458,7 +2525,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     BzLog.printStackTrace(e);
                 }
             }
-        });
+        }, TrackTaskManager.PRIORITY_HIGH);
     }
 
 //    @Override
@@ -2667,8 +2734,7 @@ public class BaizeAPI implements IBaizeDataAPI {
             eventObject.put("time", eventTime);
 
             try {
-                SecureRandom secureRandom = new SecureRandom();
-                eventObject.put("_track_id", secureRandom.nextInt());
+                eventObject.put("_track_id", mTrackIdGenerator.nextTrackId());
             } catch (Exception e) {
                 //ignore
             }
@@ -2707,7 +2773,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                 }
 
                 // 当前网络状况
-                String networkType = NetworkUtils.networkType(mContext);
+                String networkType = NetworkStateCache.getInstance().networkType(mContext);
                 propertiesObject.put("$wifi", "WIFI".equals(networkType));
                 propertiesObject.put("$network_type", networkType);
 
@@ -2813,44 +2879,10 @@ public class BaizeAPI implements IBaizeDataAPI {
             }
             if (enterDb) {
                 try {
-                    Iterator<String> it = eventProperties.keys();
-                    while (it.hasNext()) {
-                        String key = it.next();
-                        try {
-                            BzDataHelper.assertKey(key);
-                        } catch (Exception e) {
-                            BzLog.printStackTrace(e);
-                            return false;
-                        }
-                        Object value = eventProperties.opt(key);
-                        if (!(value instanceof CharSequence || value instanceof Number || value
-                                instanceof JSONArray || value instanceof Boolean || value instanceof Date)) {
-                            BzLog.d(TAG, String.format("The property value must be an instance of " +
-                                    "CharSequence/Number/Boolean/JSONArray. [key='%s', value='%s']", key, value == null ? "" : value.toString()));
-                            return false;
-                        }
-
-                        if ("app_crashed_reason".equals(key)) {
-                            if (value instanceof String && ((String) value).length() > 8191 * 2) {
-                                BzLog.d(TAG, "The property value is too long. [key='" + key
-                                        + "', value='" + value.toString() + "']");
-                                value = ((String) value).substring(0, 8191 * 2) + "$";
-                            }
-                        } else {
-                            if (value instanceof String && ((String) value).length() > 8191) {
-                                BzLog.d(TAG, "The property value is too long. [key='" + key
-                                        + "', value='" + value.toString() + "']");
-                                value = ((String) value).substring(0, 8191) + "$";
-                            }
-                        }
-                        if (value instanceof Date) {
-                            eventProperties.put(key, DateFormatUtils.formatDate((Date) value, Locale.CHINA));
-                        } else {
-                            eventProperties.put(key, value);
-                        }
-                    }
+                    BzDataHelper.assertPropertyTypes(eventProperties, true);
                 } catch (Exception e) {
                     BzLog.printStackTrace(e);
+                    return false;
                 }
             }
         }
@@ -2859,6 +2891,30 @@ public class BaizeAPI implements IBaizeDataAPI {
 
     private void trackEvent(final EventType eventType, String eventName, final JSONObject properties, final String
             originalDistinctId) {
+        // 在 trackEvent 中采集，$lib_detail 与之前一样指向 trackEvent
+        JSONObject dataObj = assembleEvent(eventType, eventName, properties, originalDistinctId,
+                mCallSiteCapture.getLibDetail("trackEvent"));
+        if (dataObj == null) {
+            return;
+        }
+        mMessages.enqueueEventMessage(eventType.getEventType(), dataObj);
+        if (BzLog.isLogEnabled()) {
+            BzLog.i(TAG, "track event:\n" + JSONUtils.formatJson(dataObj.toString()));
+        }
+    }
+
+    /**
+     * 组装事件：校验属性，合并预置属性、公共属性，不入库
+     *
+     * @param eventType 事件类型
+     * @param eventName 事件名称
+     * @param properties 事件属性
+     * @param originalDistinctId 原始 distinctId
+     * @param callSite 调用位置，作为 $lib_detail，由调用方通过 CallSiteCapture 采集
+     * @return 事件，校验失败或不需要入库时返回 null
+     */
+    private JSONObject assembleEvent(final EventType eventType, String eventName, final JSONObject properties, final String
+            originalDistinctId, String callSite) {
         try {
             EventTimer eventTimer = null;
             if (!TextUtils.isEmpty(eventName)) {
@@ -2880,29 +2936,10 @@ public class BaizeAPI implements IBaizeDataAPI {
             try {
                 JSONObject sendProperties;
 
+                BasePropertiesTemplate basePropertiesTemplate = getBasePropertiesTemplate();
                 if (eventType.isTrack()) {
-                    sendProperties = new JSONObject(mDeviceInfo);
-
-                    //之前可能会因为没有权限无法获取运营商信息，检测再次获取
-                    try {
-                        if (TextUtils.isEmpty(sendProperties.optString("$carrier"))) {
-                            String carrier = BaizeUtils.getCarrier(mContext);
-                            if (!TextUtils.isEmpty(carrier)) {
-                                sendProperties.put("$carrier", carrier);
-                            }
-                        }
-                    } catch (Exception e) {
-                        BzLog.printStackTrace(e);
-                    }
-                    if (!"$AppEnd".equals(eventName)) {
-                        //合并 $latest_utm 属性
-                        BaizeUtils.mergeJSONObject(ChannelUtils.getLatestUtmProperties(), sendProperties);
-                    }
-
-                    synchronized (mSuperProperties) {
-                        JSONObject superProperties = mSuperProperties.get();
-                        BaizeUtils.mergeJSONObject(superProperties, sendProperties);
-                    }
+                    //$AppEnd 不合并 $latest_utm 属性
+                    sendProperties = basePropertiesTemplate.newProperties(!"$AppEnd".equals(eventName));
 
                     try {
                         if (mDynamicSuperProperties != null) {
@@ -2915,34 +2952,12 @@ public class BaizeAPI implements IBaizeDataAPI {
                         BzLog.printStackTrace(e);
                     }
 
-                    // 当前网络状况
-                    String networkType = NetworkUtils.networkType(mContext);
-                    sendProperties.put("$wifi", "WIFI".equals(networkType));
-                    sendProperties.put("$network_type", networkType);
-
-                    // GPS
-                    try {
-                        if (mGPSLocation != null) {
-                            sendProperties.put("$latitude", mGPSLocation.getLatitude());
-                            sendProperties.put("$longitude", mGPSLocation.getLongitude());
-                        }
-                    } catch (Exception e) {
-                        BzLog.printStackTrace(e);
-                    }
-
-                    // 屏幕方向
-                    try {
-                        String screenOrientation = getScreenOrientation();
-                        if (!TextUtils.isEmpty(screenOrientation)) {
-                            sendProperties.put("$screen_orientation", screenOrientation);
-                        }
-                    } catch (Exception e) {
-                        BzLog.printStackTrace(e);
-                    }
+                    // 当前网络状况、GPS、屏幕方向
+                    basePropertiesTemplate.mergeTailProperties(sendProperties);
                 } else if (eventType.isProfile()) {
                     sendProperties = new JSONObject();
                 } else {
-                    return;
+                    return null;
                 }
 
                 String libDetail = null;
@@ -3004,18 +3019,14 @@ public class BaizeAPI implements IBaizeDataAPI {
                 libProperties.put("$app_version", app_version);
 
                 //update lib $app_version from super properties
-                JSONObject superProperties = mSuperProperties.get();
-                if (superProperties != null) {
-                    if (superProperties.has("$app_version")) {
-                        libProperties.put("$app_version", superProperties.get("$app_version"));
-                    }
+                if (basePropertiesTemplate.superAppVersion != null) {
+                    libProperties.put("$app_version", basePropertiesTemplate.superAppVersion);
                 }
 
                 final JSONObject dataObj = new JSONObject();
 
                 try {
-                    SecureRandom random = new SecureRandom();
-                    dataObj.put("_track_id", random.nextInt());
+                    dataObj.put("_track_id", mTrackIdGenerator.nextTrackId());
                 } catch (Exception e) {
                     // ignore
                 }
@@ -3091,13 +3102,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                 }
 
                 if (TextUtils.isEmpty(libDetail)) {
-                    StackTraceElement[] trace = (new Exception()).getStackTrace();
-                    if (trace.length > 1) {
-                        StackTraceElement traceElement = trace[0];
-                        libDetail = String.format("%s##%s##%s##%s", traceElement
-                                        .getClassName(), traceElement.getMethodName(), traceElement.getFileName(),
-                                traceElement.getLineNumber());
-                    }
+                    libDetail = callSite;
                 }
 
                 libProperties.put("$lib_detail", libDetail);
@@ -3112,7 +3117,7 @@ public class BaizeAPI implements IBaizeDataAPI {
                     boolean isEnterDb = isEnterDb(eventName, sendProperties);
                     if (!isEnterDb) {
                         BzLog.d(TAG, eventName + " event can not enter database");
-                        return;
+                        return null;
                     }
                 }
                 dataObj.put("properties", sendProperties);
@@ -3123,22 +3128,89 @@ public class BaizeAPI implements IBaizeDataAPI {
                     }
                 }
 
-                mMessages.enqueueEventMessage(eventType.getEventType(), dataObj);
-                if (BzLog.isLogEnabled()) {
-                    BzLog.i(TAG, "track event:\n" + JSONUtils.formatJson(dataObj.toString()));
-                }
+                return dataObj;
             } catch (JSONException e) {
                 throw new InvalidDataException("Unexpected property");
             }
         } catch (Exception e) {
             BzLog.printStackTrace(e);
         }
+        return null;
     }
     
     boolean isMultiProcess() {
         return mBzConfigOptions.mEnableMultiProcess;
     }
 
+    /**
+     * 公共属性、GPS 等发生变化时调用，下一个事件会重新构建基础属性模板
+     */
+    private void invalidateBaseProperties() {
+        mBasePropertiesVersion.incrementAndGet();
+    }
+
+    /**
+     * 重新获取运营商信息
+     *
+     * @return 是否获取到
+     */
+    private boolean retryCarrier() {
+        String carrier = BaizeUtils.getCarrier(mContext);
+        if (TextUtils.isEmpty(carrier)) {
+            return false;
+        }
+        mCarrier = carrier;
+        return true;
+    }
+
+    /**
+     * 获取当前的基础属性模板，输入有变化时重新构建
+     *
+     * @return 基础属性模板
+     */
+    private BasePropertiesTemplate getBasePropertiesTemplate() throws Exception {
+        String networkType = NetworkStateCache.getInstance().networkType(mContext);
+        String screenOrientation = getScreenOrientation();
+        BasePropertiesTemplate template = mBasePropertiesTemplate;
+        if (template != null
+                && template.version == mBasePropertiesVersion.get()
+                && template.utmVersion == ChannelUtils.getLatestUtmVersion()
+                && TextUtils.equals(template.networkType, networkType)
+                && TextUtils.equals(template.screenOrientation, screenOrientation)) {
+            //之前可能会因为没有权限无法获取运营商信息，检测再次获取
+            if (template.hasCarrier || !retryCarrier()) {
+                return template;
+            }
+        } else if (!mDeviceInfo.containsKey("$carrier") && TextUtils.isEmpty(mCarrier)) {
+            retryCarrier();
+        }
+
+        int version = mBasePropertiesVersion.get();
+        int utmVersion = ChannelUtils.getLatestUtmVersion();
+        synchronized (mSuperProperties) {
+            template = new BasePropertiesTemplate(version, mDeviceInfo, mCarrier, ChannelUtils.getLatestUtmProperties(),
+                    utmVersion, mSuperProperties.get(), networkType, mGPSLocation, screenOrientation);
+        }
+        mBasePropertiesTemplate = template;
+        DbAdapter.getInstance().setSharedPropertyKeys(template.sharedKeys);
+        return template;
+    }
+
+    /**
+     * 获取事件任务的优先级，任务队列满时优先丢弃低优先级的 $AppClick
+     *
+     * @param eventName 事件名
+     * @return 任务优先级
+     */
+    private int getTaskPriority(String eventName) {
+        if (AopConstants.APP_CLICK_EVENT_NAME.equals(eventName)) {
+            return TrackTaskManager.PRIORITY_LOW;
+        } else if ("AppCrashed".equals(eventName)) {
+            return TrackTaskManager.PRIORITY_HIGH;
+        }
+        return TrackTaskManager.PRIORITY_NORMAL;
+    }
+
     private boolean isFirstDay(long eventTime) {
         String firstDay = mFirstDay.get();
         if (firstDay == null) {
@@ -3185,15 +3257,9 @@ public class BaizeAPI implements IBaizeDataAPI {
                 }
             }
 
-            StackTraceElement[] trace = (new Exception()).getStackTrace();
-            if (trace.length > 1) {
-                StackTraceElement traceElement = trace[0];
-                String libDetail = String.format("%s##%s##%s##%s", traceElement
-                                .getClassName(), traceElement.getMethodName(), traceElement.getFileName(),
-                        traceElement.getLineNumber());
-                if (!TextUtils.isEmpty(libDetail)) {
-                    libProperties.put("$lib_detail", libDetail);
-                }
+            String libDetail = mCallSiteCapture.getLibDetail("trackItemEvent");
+            if (!TextUtils.isEmpty(libDetail)) {
+                libProperties.put("$lib_detail", libDetail);
             }
 
             JSONObject eventProperties = new JSONObject();
@@ -3214,6 +3280,25 @@ public class BaizeAPI implements IBaizeDataAPI {
         }
     }
 
+    /**
+     * 根据配置创建事件存储，开启多进程时只能使用 SQLite
+     *
+     * @return EventStore
+     */
+    private EventStore createEventStore() {
+        int eventStoreType = mBzConfigOptions.mEnableMultiProcess ? BaizeEventStoreType.SQLITE : mBzConfigOptions.mEventStoreType;
+        switch (eventStoreType) {
+            case BaizeEventStoreType.MEMORY:
+                return new MemoryEventStore();
+            case BaizeEventStoreType.FILE:
+                return new FileEventStore(mContext, mBzConfigOptions.mMaxCacheSize);
+            case BaizeEventStoreType.MAPPED:
+                return new MappedEventStore(mContext, mBzConfigOptions.mMaxCacheSize);
+            default:
+                return DbAdapter.getInstance();
+        }
+    }
+
     private void initSAConfig(String serverURL, String packageName) {
         Bundle configBundle = null;
         try {
@@ -3262,6 +3347,9 @@ public class BaizeAPI implements IBaizeDataAPI {
             mBzConfigOptions.setMaxCacheSize(32 * 1024 * 1024L);
         }
 
+        mTrackTaskManager.setQueueConfig(mBzConfigOptions.mTrackTaskQueueCapacity, mBzConfigOptions.mTrackTaskQueueOverflowPolicy);
+        mCallSiteCapture.setMode(mBzConfigOptions.mCallSiteMode, mBzConfigOptions.mCallSiteSampleRate);
+
         this.mAutoTrack = configBundle.getBoolean("com.baize.analytics.android.AutoTrack",
                 false);
         if (mBzConfigOptions.mAutoTrackEventType != 0) {
@@ -3321,6 +3409,17 @@ public class BaizeAPI implements IBaizeDataAPI {
             BaizeExceptionHandler.enableAppCrash();
         }
 
+        DbAdapter.getInstance().setMultiProcess(mBzConfigOptions.mEnableMultiProcess);
+        mMessages.setCommitPolicy(mBzConfigOptions.mEventCommitMaxCount, mBzConfigOptions.mEventCommitInterval);
+        mMessages.setFlushBatchSize(mBzConfigOptions.mFlushBatchSize);
+        mMessages.setStreamingUpload(mBzConfigOptions.mStreamingUpload);
+        mMessages.setUploadFormat(mBzConfigOptions.mUploadFormat);
+        mMessages.setTransport(mBzConfigOptions.mTransport);
+        mMessages.setFlushWindowSize(mBzConfigOptions.mFlushWindowSize);
+
+        mTrackTaskManager.setQueueConfig(mBzConfigOptions.mTrackTaskQueueCapacity, mBzConfigOptions.mTrackTaskQueueOverflowPolicy);
+        mCallSiteCapture.setMode(mBzConfigOptions.mCallSiteMode, mBzConfigOptions.mCallSiteSampleRate);
+
         if (mBzConfigOptions.mAutoTrackEventType != 0) {
             this.mAutoTrack = true;
         }
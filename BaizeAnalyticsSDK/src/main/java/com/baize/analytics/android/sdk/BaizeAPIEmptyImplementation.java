@@ -451,6 +451,11 @@ public class BaizeAPIEmptyImplementation extends BaizeAPI {
 
     }
 
+    @Override
+    public void track(List<BaizeEvent> events) {
+
+    }
+
     @Deprecated
     @Override
     public void trackTimer(final String eventName) {
@@ -756,6 +761,11 @@ public class BaizeAPIEmptyImplementation extends BaizeAPI {
 
     }
 
+    @Override
+    public long getDroppedEventCount() {
+        return 0;
+    }
+
     @Override
     public void stopTrackThread() {
 
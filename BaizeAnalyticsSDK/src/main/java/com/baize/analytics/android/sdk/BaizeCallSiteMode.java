@@ -0,0 +1,32 @@
+/*
+ * Created by bkb on 2020/06/05.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+/**
+ * $lib_detail 调用位置的采集方式，事件属性或插件已提供 $lib_detail 时不会采集
+ */
+public interface BaizeCallSiteMode {
+    // 不采集
+    int OFF = 0;
+    // 每 N 个事件采集一次
+    int SAMPLED = 1;
+    // 每个调用类只采集一次并缓存
+    int CACHED = 2;
+    // 每个事件都采集
+    int FULL = 3;
+}
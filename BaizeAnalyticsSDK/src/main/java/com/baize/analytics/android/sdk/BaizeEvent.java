@@ -0,0 +1,52 @@
+/*
+ * Created by bkb on 2020/06/09.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import org.json.JSONObject;
+
+/**
+ * 批量追踪时的单个事件，参考 {@link IBaizeDataAPI#track(java.util.List)}
+ */
+public class BaizeEvent {
+    /**
+     * 事件的名称
+     */
+    private String eventName;
+
+    /**
+     * 事件的属性
+     */
+    private JSONObject properties;
+
+    public BaizeEvent(String eventName) {
+        this(eventName, null);
+    }
+
+    public BaizeEvent(String eventName, JSONObject properties) {
+        this.eventName = eventName;
+        this.properties = properties;
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public JSONObject getProperties() {
+        return properties;
+    }
+}
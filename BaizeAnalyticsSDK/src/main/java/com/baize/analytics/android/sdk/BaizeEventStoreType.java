@@ -0,0 +1,32 @@
+/*
+ * Created by bkb on 2020/06/11.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+/**
+ * 事件的存储方式
+ */
+public interface BaizeEventStoreType {
+    // SQLite 数据库，支持多进程
+    int SQLITE = 0;
+    // 内存，进程退出后未上报的事件会丢失
+    int MEMORY = 1;
+    // 只追加写的分段文件，不支持多进程
+    int FILE = 2;
+    // 内存映射的固定大小分段文件，不支持多进程
+    int MAPPED = 3;
+}
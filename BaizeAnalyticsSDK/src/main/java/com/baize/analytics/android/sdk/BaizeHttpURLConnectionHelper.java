@@ -41,7 +41,18 @@ class BaizeHttpURLConnectionHelper {
         if (TextUtils.isEmpty(location)) {
             location = connection.getHeaderField("location");
         }
-        if (TextUtils.isEmpty(location)) {
+        return getLocation(location, path);
+    }
+
+    /**
+     * 补全重定向地址
+     *
+     * @param location 响应头 Location 的值
+     * @param path 原请求地址
+     * @return 重定向地址，没有时返回 null
+     */
+    static String getLocation(String location, String path) throws MalformedURLException {
+        if (TextUtils.isEmpty(location) || TextUtils.isEmpty(path)) {
             return null;
         }
         if (!(location.startsWith("http://") || location
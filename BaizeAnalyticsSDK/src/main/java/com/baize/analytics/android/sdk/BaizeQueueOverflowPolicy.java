@@ -0,0 +1,32 @@
+/*
+ * Created by bkb on 2020/06/01.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+/**
+ * 事件任务队列满时的处理策略
+ */
+public interface BaizeQueueOverflowPolicy {
+    // 阻塞调用线程，直到队列有空位
+    int BLOCK = 0;
+    // 丢弃新加入的任务
+    int DROP_NEWEST = 1;
+    // 丢弃队列中最早的任务
+    int DROP_OLDEST = 2;
+    // 丢弃队列中优先级最低的任务（同优先级丢弃最早的）
+    int DROP_LOWEST_PRIORITY = 3;
+}
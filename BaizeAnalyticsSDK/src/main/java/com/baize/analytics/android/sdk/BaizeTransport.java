@@ -0,0 +1,148 @@
+/*
+ * Created by bkb on 2020/06/19.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 上报事件的网络传输。默认使用复用连接的 HttpURLConnection，
+ * 可以通过 {@link BzConfigOptions#setTransport(BaizeTransport)} 替换为 App 自己的网络库，例如共享连接池的 OkHttp。
+ * 实现需要支持多线程调用，不自动处理重定向。
+ */
+public interface BaizeTransport {
+
+    /**
+     * 发送请求并读取完整的响应
+     *
+     * @param request 请求
+     * @return 响应
+     * @throws IOException 网络错误
+     */
+    Response execute(Request request) throws IOException;
+
+    /**
+     * 请求体
+     */
+    interface Body {
+        /**
+         * 写入请求体，可能因重试被调用多次
+         *
+         * @param out 输出流
+         * @throws IOException 写入失败
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * POST 请求
+     */
+    final class Request {
+        private final String mUrl;
+        private final Map<String, String> mHeaders = new LinkedHashMap<>();
+        private final long mContentLength;
+        private final Body mBody;
+
+        /**
+         * @param url 请求地址
+         * @param contentLength 请求体字节数，小于 0 时表示未知，使用 chunked 传输
+         * @param body 请求体
+         */
+        public Request(String url, long contentLength, Body body) {
+            mUrl = url;
+            mContentLength = contentLength;
+            mBody = body;
+        }
+
+        /**
+         * 设置请求头，value 为 null 时忽略
+         *
+         * @param name 名称
+         * @param value 值
+         * @return Request
+         */
+        public Request setHeader(String name, String value) {
+            if (value != null) {
+                mHeaders.put(name, value);
+            }
+            return this;
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+
+        public Map<String, String> getHeaders() {
+            return Collections.unmodifiableMap(mHeaders);
+        }
+
+        public long getContentLength() {
+            return mContentLength;
+        }
+
+        public Body getBody() {
+            return mBody;
+        }
+    }
+
+    /**
+     * 响应
+     */
+    final class Response {
+        private final int mCode;
+        private final Map<String, String> mHeaders;
+        private final byte[] mBody;
+
+        /**
+         * @param code 状态码
+         * @param headers 响应头，名称不区分大小写，可以为 null
+         * @param body 响应体，可以为 null
+         */
+        public Response(int code, Map<String, String> headers, byte[] body) {
+            mCode = code;
+            mHeaders = headers == null ? Collections.<String, String>emptyMap() : headers;
+            mBody = body == null ? new byte[0] : body;
+        }
+
+        public int getCode() {
+            return mCode;
+        }
+
+        /**
+         * 获取响应头，名称不区分大小写
+         *
+         * @param name 名称
+         * @return 值，不存在时为 null
+         */
+        public String getHeader(String name) {
+            for (Map.Entry<String, String> entry : mHeaders.entrySet()) {
+                if (name.equalsIgnoreCase(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+
+        public byte[] getBody() {
+            return mBody;
+        }
+    }
+}
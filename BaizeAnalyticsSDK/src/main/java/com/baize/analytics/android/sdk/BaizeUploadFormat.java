@@ -0,0 +1,28 @@
+/*
+ * Created by bkb on 2020/06/18.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+/**
+ * 上报请求体的格式
+ */
+public interface BaizeUploadFormat {
+    // 表单 crc=xxx&gzip=1&data_list=xxx，data_list 为 gzip 压缩后 Base64 编码的事件 JSON 数组
+    int FORM = 0;
+    // gzip 压缩的事件 JSON 数组，Content-Encoding: gzip，未压缩数据的 CRC32 放在请求头 X-Baize-Crc32 中
+    int GZIP = 1;
+}
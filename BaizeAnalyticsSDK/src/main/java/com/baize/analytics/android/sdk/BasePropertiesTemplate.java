@@ -0,0 +1,145 @@
+/*
+ * Created by bkb on 2020/06/03.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import android.text.TextUtils;
+
+import com.baize.analytics.android.sdk.util.BaizeUtils;
+
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 事件的基础属性模板：设备信息、$latest_utm、公共属性、网络、GPS、屏幕方向预先合并，
+ * 构建后不再修改，可在多个线程间无锁读取。任何输入发生变化时重新构建。
+ */
+/* package */ final class BasePropertiesTemplate {
+    /**
+     * 构建时 BaizeAPI 的属性版本号
+     */
+    final int version;
+    /**
+     * 构建时 $latest_utm 的版本号
+     */
+    final int utmVersion;
+    final String networkType;
+    final String screenOrientation;
+    /**
+     * 是否已获取到运营商信息
+     */
+    final boolean hasCarrier;
+    /**
+     * 公共属性中的 $app_version，没有时为 null
+     */
+    final Object superAppVersion;
+    /**
+     * 设备信息和公共属性的属性名，这些属性在多数事件中相同，存储时提取到单独的表中。
+     * 网络、位置和屏幕方向经常变化，每次变化都会产生新的属性集合，不提取
+     */
+    final Set<String> sharedKeys;
+    /* 设备信息 + $latest_utm + 公共属性 */
+    private final JSONObject mProperties;
+    /* 设备信息 + 公共属性，$AppEnd 事件不合并 $latest_utm */
+    private final JSONObject mPropertiesWithoutUtm;
+    /* 在动态公共属性之后合并的属性：网络、GPS、屏幕方向 */
+    private final JSONObject mTailProperties;
+
+    BasePropertiesTemplate(int version, Map<String, Object> deviceInfo, String carrier, JSONObject latestUtmProperties,
+                           int utmVersion, JSONObject superProperties, String networkType, BaizeGPSLocation gpsLocation,
+                           String screenOrientation) throws Exception {
+        this.version = version;
+        this.utmVersion = utmVersion;
+        this.networkType = networkType;
+        this.screenOrientation = screenOrientation;
+
+        mPropertiesWithoutUtm = new JSONObject(deviceInfo);
+        if (TextUtils.isEmpty(mPropertiesWithoutUtm.optString("$carrier")) && !TextUtils.isEmpty(carrier)) {
+            mPropertiesWithoutUtm.put("$carrier", carrier);
+        }
+        this.hasCarrier = !TextUtils.isEmpty(mPropertiesWithoutUtm.optString("$carrier"));
+        mProperties = copy(mPropertiesWithoutUtm);
+        BaizeUtils.mergeJSONObject(latestUtmProperties, mProperties);
+        if (superProperties != null) {
+            BaizeUtils.mergeJSONObject(superProperties, mProperties);
+            BaizeUtils.mergeJSONObject(superProperties, mPropertiesWithoutUtm);
+            superAppVersion = superProperties.has("$app_version") ? superProperties.get("$app_version") : null;
+        } else {
+            superAppVersion = null;
+        }
+
+        mTailProperties = new JSONObject();
+        mTailProperties.put("$wifi", "WIFI".equals(networkType));
+        mTailProperties.put("$network_type", networkType);
+        if (gpsLocation != null) {
+            mTailProperties.put("$latitude", gpsLocation.getLatitude());
+            mTailProperties.put("$longitude", gpsLocation.getLongitude());
+        }
+        if (!TextUtils.isEmpty(screenOrientation)) {
+            mTailProperties.put("$screen_orientation", screenOrientation);
+        }
+
+        Set<String> keys = new HashSet<>();
+        addKeys(mProperties, keys);
+        sharedKeys = Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * 创建事件属性，在返回的对象上合并动态公共属性后再调用 {@link #mergeTailProperties(JSONObject)}
+     *
+     * @param withLatestUtm 是否包含 $latest_utm 属性
+     * @return 新的属性对象
+     */
+    JSONObject newProperties(boolean withLatestUtm) throws Exception {
+        return copy(withLatestUtm ? mProperties : mPropertiesWithoutUtm);
+    }
+
+    /**
+     * 合并网络、GPS、屏幕方向属性
+     *
+     * @param dest 事件属性
+     */
+    void mergeTailProperties(JSONObject dest) throws Exception {
+        Iterator<String> iterator = mTailProperties.keys();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            dest.put(key, mTailProperties.get(key));
+        }
+    }
+
+    private static void addKeys(JSONObject source, Set<String> dest) {
+        Iterator<String> iterator = source.keys();
+        while (iterator.hasNext()) {
+            dest.add(iterator.next());
+        }
+    }
+
+    private static JSONObject copy(JSONObject source) throws Exception {
+        JSONObject dest = new JSONObject();
+        Iterator<String> iterator = source.keys();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            dest.put(key, source.get(key));
+        }
+        return dest;
+    }
+}
@@ -314,4 +314,142 @@ public final class BzConfigOptions extends AbstractSAConfigOptions {
         ChannelUtils.setSourceChannelKeys(channels);
         return this;
     }
+
+    /**
+     * 设置事件任务队列的容量，最小 100
+     *
+     * @param capacity 队列容量
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setTrackTaskQueueCapacity(int capacity) {
+        this.mTrackTaskQueueCapacity = Math.max(100, capacity);
+        return this;
+    }
+
+    /**
+     * 设置事件任务队列满时的处理策略，默认丢弃优先级最低的任务
+     *
+     * @param overflowPolicy 处理策略，参考 {@link BaizeQueueOverflowPolicy}
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setTrackTaskQueueOverflowPolicy(int overflowPolicy) {
+        this.mTrackTaskQueueOverflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    /**
+     * 设置 $lib_detail 调用位置的采集方式，默认每个调用类只采集一次并缓存
+     *
+     * @param callSiteMode 采集方式，参考 {@link BaizeCallSiteMode}
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setCallSiteMode(int callSiteMode) {
+        this.mCallSiteMode = callSiteMode;
+        return this;
+    }
+
+    /**
+     * 设置 SAMPLED 模式下的采样间隔，每 sampleRate 个事件采集一次调用位置，最小 1
+     *
+     * @param sampleRate 采样间隔
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setCallSiteSampleRate(int sampleRate) {
+        this.mCallSiteSampleRate = Math.max(1, sampleRate);
+        return this;
+    }
+
+    /**
+     * 设置事件写缓冲的条数上限，缓冲的事件在一个数据库事务中写入，默认 20 条，最小 1 条（不缓冲）
+     *
+     * @param maxCount 条数上限
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setEventCommitMaxCount(int maxCount) {
+        this.mEventCommitMaxCount = Math.max(1, maxCount);
+        return this;
+    }
+
+    /**
+     * 设置事件写缓冲的等待时间上限，默认 500 毫秒，最大 5 秒
+     *
+     * @param interval 等待时间上限，单位毫秒
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setEventCommitInterval(int interval) {
+        this.mEventCommitInterval = Math.max(0, Math.min(5 * 1000, interval));
+        return this;
+    }
+
+    /**
+     * 设置事件的存储方式，默认为 {@link BaizeEventStoreType#SQLITE}，多进程采集时只能使用 SQLite
+     *
+     * @param eventStoreType 存储方式，参考 {@link BaizeEventStoreType}
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setEventStoreType(int eventStoreType) {
+        this.mEventStoreType = eventStoreType;
+        return this;
+    }
+
+    /**
+     * 设置每次上报的事件字节数上限（压缩前），默认 256KB，范围 16KB 到 2MB。
+     * 该值用于 WiFi、4G、5G 网络，3G 网络为 1/4，2G 网络为 1/16，单条事件超过上限时单独上报
+     *
+     * @param flushBatchSize 字节数上限
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setFlushBatchSize(int flushBatchSize) {
+        this.mFlushBatchSize = Math.max(16 * 1024, Math.min(2 * 1024 * 1024, flushBatchSize));
+        return this;
+    }
+
+    /**
+     * 是否以流的方式上报。开启后事件在 gzip 压缩、Base64 编码和 URL 编码的同时写入连接，
+     * 使用 chunked 传输，不在内存中生成完整的请求体，crc 参数放在请求体末尾。默认关闭
+     *
+     * @param enableStreamingUpload 是否以流的方式上报
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions enableStreamingUpload(boolean enableStreamingUpload) {
+        this.mStreamingUpload = enableStreamingUpload;
+        return this;
+    }
+
+    /**
+     * 设置上报请求体的格式，默认为 {@link BaizeUploadFormat#FORM}。
+     * {@link BaizeUploadFormat#GZIP} 直接发送 gzip 压缩的 JSON，没有 Base64 和 URL 编码的膨胀，需要服务端支持
+     *
+     * @param uploadFormat 请求体的格式，参考 {@link BaizeUploadFormat}
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setUploadFormat(int uploadFormat) {
+        this.mUploadFormat = uploadFormat;
+        return this;
+    }
+
+    /**
+     * 设置上报事件的网络传输，例如使用 App 中共享连接池的 OkHttp。
+     * 默认使用 HttpURLConnection，请求之间复用 keep-alive 连接
+     *
+     * @param transport 网络传输
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setTransport(BaizeTransport transport) {
+        this.mTransport = transport;
+        return this;
+    }
+
+    /**
+     * 设置同时上报的批次数，默认为 1，即逐批串行上报，范围 1 到 4。
+     * 大于 1 时积压的事件按 id 范围分批并行上报，按顺序确认删除，高延迟网络下可以减少上报耗时，
+     * 但服务端收到批次的顺序可能与事件顺序不同。debug 模式下始终为 1
+     *
+     * @param flushWindowSize 批次数
+     * @return BzConfigOptions
+     */
+    public BzConfigOptions setFlushWindowSize(int flushWindowSize) {
+        this.mFlushWindowSize = Math.max(1, Math.min(4, flushWindowSize));
+        return this;
+    }
 }
\ No newline at end of file
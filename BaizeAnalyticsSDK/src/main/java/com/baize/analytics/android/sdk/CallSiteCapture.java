@@ -0,0 +1,89 @@
+/*
+ * Created by bkb on 2020/06/05.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 采集 $lib_detail 的调用位置。
+ * 遍历调用栈的开销很大，默认按调用类缓存，只在第一次调用时遍历。
+ */
+/* package */ final class CallSiteCapture {
+    private final Map<String, String> mCache = new ConcurrentHashMap<>();
+    private final AtomicInteger mCounter = new AtomicInteger();
+    private volatile int mMode = BaizeCallSiteMode.CACHED;
+    private volatile int mSampleRate = 100;
+
+    /**
+     * 设置采集方式
+     *
+     * @param mode 采集方式，参考 {@link BaizeCallSiteMode}
+     * @param sampleRate SAMPLED 模式下的采样间隔，每 sampleRate 个事件采集一次
+     */
+    void setMode(int mode, int sampleRate) {
+        mMode = mode;
+        mSampleRate = Math.max(1, sampleRate);
+    }
+
+    /**
+     * 获取调用方的 $lib_detail，格式为 "类名##方法名##文件名##行号"
+     *
+     * @param callerKey 调用方的标识，CACHED 模式下作为缓存的 key
+     * @return $lib_detail，不采集时返回 null
+     */
+    String getLibDetail(String callerKey) {
+        switch (mMode) {
+            case BaizeCallSiteMode.OFF:
+                return null;
+            case BaizeCallSiteMode.SAMPLED:
+                if (mCounter.getAndIncrement() % mSampleRate != 0) {
+                    return null;
+                }
+                return capture();
+            case BaizeCallSiteMode.FULL:
+                return capture();
+            case BaizeCallSiteMode.CACHED:
+            default:
+                String libDetail = mCache.get(callerKey);
+                if (libDetail == null) {
+                    libDetail = capture();
+                    if (libDetail != null) {
+                        mCache.put(callerKey, libDetail);
+                    }
+                }
+                return libDetail;
+        }
+    }
+
+    /**
+     * 遍历调用栈，返回调用 {@link #getLibDetail(String)} 的位置
+     */
+    private String capture() {
+        StackTraceElement[] trace = (new Exception()).getStackTrace();
+        // trace[0] 为 capture，trace[1] 为 getLibDetail，trace[2] 为调用方
+        if (trace.length > 2) {
+            StackTraceElement traceElement = trace[2];
+            return String.format("%s##%s##%s##%s", traceElement
+                            .getClassName(), traceElement.getMethodName(), traceElement.getFileName(),
+                    traceElement.getLineNumber());
+        }
+        return null;
+    }
+}
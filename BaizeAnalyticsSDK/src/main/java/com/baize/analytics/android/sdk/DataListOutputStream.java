@@ -0,0 +1,133 @@
+/*
+ * Created by bkb on 2020/06/18.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 以流的方式输出上报的表单 gzip=1&amp;data_list=xxx&amp;crc=xxx。
+ * 写入的 gzip 数据按 3 字节一组做 Base64 编码，+、/、= 做 URL 编码后直接写入下层输出流，
+ * 同时按 String.hashCode 的算法累计 Base64 文本的哈希，结束时作为 crc 追加到末尾，不需要在内存中保留完整的请求体。
+ */
+/* package */ class DataListOutputStream extends FilterOutputStream {
+    private static final byte[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private final byte[] mBuffer = new byte[4096];
+    private int mBufferSize;
+    /* 未满 3 字节的分组 */
+    private int mGroup;
+    private int mGroupSize;
+    /* Base64 文本的 String.hashCode */
+    private int mHash;
+    private boolean mFinished;
+
+    DataListOutputStream(OutputStream out) throws IOException {
+        super(out);
+        writeAscii("gzip=1&data_list=");
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        mGroup = (mGroup << 8) | (b & 0xff);
+        if (++mGroupSize == 3) {
+            encodeGroup(4);
+            mGroup = 0;
+            mGroupSize = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(b[i]);
+        }
+    }
+
+    /**
+     * 输出剩余的分组、Base64 填充和 crc 参数，不关闭下层输出流
+     */
+    void finish() throws IOException {
+        if (mFinished) {
+            return;
+        }
+        mFinished = true;
+        if (mGroupSize > 0) {
+            int chars = mGroupSize + 1;
+            mGroup <<= 8 * (3 - mGroupSize);
+            encodeGroup(chars);
+            for (int i = chars; i < 4; i++) {
+                writeChar('=');
+            }
+        }
+        writeAscii("&crc=" + mHash);
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        super.close();
+    }
+
+    /* 输出分组的前 chars 个 Base64 字符 */
+    private void encodeGroup(int chars) throws IOException {
+        for (int i = 0; i < chars; i++) {
+            writeChar(BASE64[(mGroup >> (18 - 6 * i)) & 0x3f]);
+        }
+    }
+
+    private void writeChar(int c) throws IOException {
+        mHash = 31 * mHash + c;
+        if (c == '+' || c == '/' || c == '=') {
+            writeByte('%');
+            writeByte(HEX[c >> 4]);
+            writeByte(HEX[c & 0xf]);
+        } else {
+            writeByte(c);
+        }
+    }
+
+    private void writeAscii(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            writeByte(text.charAt(i));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (mBufferSize == mBuffer.length) {
+            flushBuffer();
+        }
+        mBuffer[mBufferSize++] = (byte) b;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (mBufferSize > 0) {
+            out.write(mBuffer, 0, mBufferSize);
+            mBufferSize = 0;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Created by bkb on 2020/06/22.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * 上报失败后的重试调度。
+ * 连续失败时按指数退避计算等待时长，并在 [0, 上限] 之间随机取值（full jitter），避免服务恢复时所有设备同时重试；
+ * 连续失败 {@link #CIRCUIT_THRESHOLD} 次后熔断 {@link #OPEN_DURATION}，熔断结束后试探一次，成功后恢复，失败则继续熔断。
+ * 服务端返回 Retry-After 时至少等待其指定的时长。失败次数和下次允许上报的时间保存在 SharedPreferences 中，进程重启后继续生效。
+ */
+/* package */ class FlushRetryScheduler {
+    private static final String TAG = "SA.FlushRetryScheduler";
+    private static final String SHARED_PREF_FAILURES = "baize.flush.failures";
+    private static final String SHARED_PREF_NEXT_ATTEMPT = "baize.flush.next.attempt";
+    /* 第一次失败后的退避上限 */
+    static final long BASE_DELAY = 10 * 1000;
+    /* 退避上限 */
+    static final long MAX_DELAY = 10 * 60 * 1000;
+    /* 连续失败多少次后熔断 */
+    static final int CIRCUIT_THRESHOLD = 6;
+    /* 熔断时长 */
+    static final long OPEN_DURATION = 30 * 60 * 1000;
+    /* Retry-After 的上限 */
+    static final long MAX_RETRY_AFTER = 24 * 60 * 60 * 1000;
+    private final SharedPreferences mPreferences;
+    private final Random mRandom;
+    /* 连续失败的次数 */
+    private int mFailures;
+    /* 下次允许上报的时间 */
+    private long mNextAttemptTime;
+    /* 本次失败中服务端要求的最短等待时长 */
+    private long mRetryAfter;
+
+    /**
+     * @param preferences 保存状态的 SharedPreferences，为 null 时不保存
+     * @param random 随机数
+     */
+    FlushRetryScheduler(SharedPreferences preferences, Random random) {
+        mPreferences = preferences;
+        mRandom = random;
+        if (preferences != null) {
+            mFailures = preferences.getInt(SHARED_PREF_FAILURES, 0);
+            mNextAttemptTime = preferences.getLong(SHARED_PREF_NEXT_ATTEMPT, 0);
+        }
+    }
+
+    /**
+     * 获取距离下次允许上报的时长
+     *
+     * @param now 当前时间
+     * @return 时长，为 0 时可以上报
+     */
+    synchronized long getDelay(long now) {
+        long delay = mNextAttemptTime - now;
+        if (delay <= 0) {
+            return 0;
+        }
+        // 系统时间被调早时，等待时长不超过上限
+        long maxDelay = Math.max(OPEN_DURATION, MAX_RETRY_AFTER);
+        if (delay > maxDelay) {
+            mNextAttemptTime = now + maxDelay;
+            delay = maxDelay;
+        }
+        return delay;
+    }
+
+    /**
+     * 是否处于失败后的重试中，重试时只上报一批试探
+     */
+    synchronized boolean isRetrying() {
+        return mFailures > 0;
+    }
+
+    /**
+     * 上报成功，重置状态
+     */
+    synchronized void onSuccess() {
+        mRetryAfter = 0;
+        if (mFailures == 0 && mNextAttemptTime == 0) {
+            return;
+        }
+        mFailures = 0;
+        mNextAttemptTime = 0;
+        save();
+    }
+
+    /**
+     * 上报失败，计算下次允许上报的时间
+     *
+     * @param now 当前时间
+     * @return 距离下次允许上报的时长
+     */
+    synchronized long onFailure(long now) {
+        mFailures++;
+        long delay;
+        if (mFailures >= CIRCUIT_THRESHOLD) {
+            delay = OPEN_DURATION;
+            BzLog.i(TAG, "Flush failed " + mFailures + " times in a row, stop flushing for " + delay + " ms");
+        } else {
+            long ceiling = Math.min(MAX_DELAY, BASE_DELAY << (mFailures - 1));
+            delay = (long) (mRandom.nextDouble() * ceiling);
+        }
+        delay = Math.max(delay, mRetryAfter);
+        mRetryAfter = 0;
+        mNextAttemptTime = now + delay;
+        save();
+        return delay;
+    }
+
+    /**
+     * 记录服务端返回的 Retry-After，在本次失败时生效
+     *
+     * @param value 秒数或者 HTTP 日期
+     * @param now 当前时间
+     */
+    synchronized void onRetryAfter(String value, long now) {
+        long retryAfter = parseRetryAfter(value, now);
+        if (retryAfter > 0) {
+            mRetryAfter = Math.max(mRetryAfter, Math.min(retryAfter, MAX_RETRY_AFTER));
+        }
+    }
+
+    /**
+     * 解析 Retry-After
+     *
+     * @param value 秒数或者 HTTP 日期
+     * @param now 当前时间
+     * @return 等待时长，无法解析时返回 0
+     */
+    static long parseRetryAfter(String value, long now) {
+        if (TextUtils.isEmpty(value)) {
+            return 0;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // 不是秒数，按 HTTP 日期解析
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            Date date = format.parse(value);
+            return date == null ? 0 : Math.max(0, date.getTime() - now);
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+            return 0;
+        }
+    }
+
+    private void save() {
+        if (mPreferences == null) {
+            return;
+        }
+        try {
+            mPreferences.edit()
+                    .putInt(SHARED_PREF_FAILURES, mFailures)
+                    .putLong(SHARED_PREF_NEXT_ATTEMPT, mNextAttemptTime)
+                    .apply();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Created by bkb on 2020/06/19.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * 默认的网络传输。
+ * 响应体读完后只关闭输入流，不调用 disconnect，连接回到 HttpURLConnection 的 keep-alive 连接池，
+ * 连续上报多批数据时不需要重复 TCP 和 TLS 握手；出现网络错误时才断开连接。
+ */
+/* package */ class HttpURLConnectionTransport implements BaizeTransport {
+    @Override
+    public Response execute(Request request) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(request.getUrl()).openConnection();
+        boolean success = false;
+        try {
+            SSLSocketFactory sslSocketFactory = BaizeAPI.sharedInstance().getSSLSocketFactory();
+            if (sslSocketFactory != null && connection instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+            }
+            connection.setInstanceFollowRedirects(false);
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            long contentLength = request.getContentLength();
+            if (contentLength >= 0) {
+                connection.setFixedLengthStreamingMode((int) contentLength);
+            } else {
+                connection.setChunkedStreamingMode(0);
+            }
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            OutputStream out = new BufferedOutputStream(connection.getOutputStream());
+            request.getBody().writeTo(out);
+            out.close();
+
+            int responseCode = connection.getResponseCode();
+            InputStream in;
+            try {
+                in = connection.getInputStream();
+            } catch (FileNotFoundException e) {
+                in = connection.getErrorStream();
+            }
+            byte[] body = null;
+            if (in != null) {
+                try {
+                    body = slurp(in);
+                } finally {
+                    in.close();
+                }
+            }
+            Response response = new Response(responseCode, getHeaders(connection), body);
+            success = true;
+            return response;
+        } finally {
+            if (!success) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static Map<String, String> getHeaders(HttpURLConnection connection) {
+        Map<String, String> headers = new HashMap<>();
+        Map<String, List<String>> fields = connection.getHeaderFields();
+        if (fields != null) {
+            for (Map.Entry<String, List<String>> field : fields.entrySet()) {
+                if (field.getKey() != null && field.getValue() != null && !field.getValue().isEmpty()) {
+                    headers.put(field.getKey(), field.getValue().get(0));
+                }
+            }
+        }
+        return headers;
+    }
+
+    private static byte[] slurp(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        int nRead;
+        byte[] data = new byte[8192];
+        while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
+            buffer.write(data, 0, nRead);
+        }
+        return buffer.toByteArray();
+    }
+}
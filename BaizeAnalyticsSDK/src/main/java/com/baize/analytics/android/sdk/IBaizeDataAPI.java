@@ -670,6 +670,14 @@ public interface IBaizeDataAPI extends IFragmentAPI {
      */
     void track(String eventName);
 
+    /**
+     * 批量追踪事件，所有事件在一次任务中处理，并在一个数据库事务中入库，
+     * 适用于一次产生大量事件的场景，例如商品曝光
+     *
+     * @param events 事件列表
+     */
+    void track(List<BaizeEvent> events);
+
     /**
      * 初始化事件的计时器，默认计时单位为毫秒。
      * 详细用法请参考 trackTimer(String, TimeUnit)
@@ -1085,4 +1093,11 @@ public interface IBaizeDataAPI extends IFragmentAPI {
      * 开启事件采集
      */
     void startTrackThread();
+
+    /**
+     * 获取因事件任务队列已满而被丢弃的事件数，可用于监控告警
+     *
+     * @return 丢弃的事件数
+     */
+    long getDroppedEventCount();
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+/*
+ * Created by bkb on 2020/06/19.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 不访问网络的传输，用于测试：记录收到的请求和请求体，按设置的延迟返回设置的状态码和响应头
+ */
+public class LoopbackTransport implements BaizeTransport {
+    private final List<Request> mRequests = new ArrayList<>();
+    private final List<byte[]> mBodies = new ArrayList<>();
+    private final Map<String, String> mResponseHeaders = new HashMap<>();
+    private volatile int mResponseCode = 200;
+    private volatile long mLatency = 0;
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.getBody().writeTo(out);
+        if (mLatency > 0) {
+            try {
+                Thread.sleep(mLatency);
+            } catch (InterruptedException e) {
+                throw new IOException("interrupted");
+            }
+        }
+        synchronized (this) {
+            mRequests.add(request);
+            mBodies.add(out.toByteArray());
+            return new Response(mResponseCode, new HashMap<>(mResponseHeaders), null);
+        }
+    }
+
+    /**
+     * 设置响应的状态码，默认 200
+     *
+     * @param responseCode 状态码
+     */
+    public void setResponseCode(int responseCode) {
+        mResponseCode = responseCode;
+    }
+
+    /**
+     * 设置响应头，value 为 null 时删除
+     *
+     * @param name 名称
+     * @param value 值
+     */
+    public synchronized void setResponseHeader(String name, String value) {
+        if (value == null) {
+            mResponseHeaders.remove(name);
+        } else {
+            mResponseHeaders.put(name, value);
+        }
+    }
+
+    /**
+     * 设置每个请求的延迟，模拟网络往返时间
+     *
+     * @param latency 延迟，单位毫秒
+     */
+    public void setLatency(long latency) {
+        mLatency = latency;
+    }
+
+    /**
+     * 获取收到的请求
+     */
+    public synchronized List<Request> getRequests() {
+        return new ArrayList<>(mRequests);
+    }
+
+    /**
+     * 获取收到的请求体，与 {@link #getRequests()} 顺序相同
+     */
+    public synchronized List<byte[]> getBodies() {
+        return new ArrayList<>(mBodies);
+    }
+
+    /**
+     * 清空收到的请求
+     */
+    public synchronized void clear() {
+        mRequests.clear();
+        mBodies.clear();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Created by bkb on 2020/06/06.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import com.baize.analytics.android.sdk.data.DbAdapter;
+import com.baize.analytics.android.sdk.data.DbParams;
+import com.baize.analytics.android.sdk.data.persistent.PersistentTrackIdEpoch;
+
+import java.security.SecureRandom;
+
+/**
+ * _track_id 生成器：高 21 位为安装纪元，低 32 位为递增的序号，合计不超过 2^53，在 JSON 中不丢失精度。
+ * 序号通过 ContentProvider 按块预留，由 ContentProvider 所在进程同步写入 SharedPreferences，
+ * 多个进程和进程重启后都不会分配到已使用的序号，每 {@link DbParams#TRACK_ID_BLOCK_SIZE} 个事件才预留一次。
+ */
+/* package */ final class TrackIdGenerator {
+    private static final String TAG = "SA.TrackIdGenerator";
+    private static final int EPOCH_BITS = 21;
+    private final long mEpoch;
+    private final Reservation mReservation;
+    private long mSequence;
+    private long mReservedLimit;
+
+    /**
+     * 序号的预留方式
+     */
+    interface Reservation {
+        /**
+         * 预留 {@link DbParams#TRACK_ID_BLOCK_SIZE} 个序号
+         *
+         * @return 起始序号，失败时返回 -1
+         */
+        long reserve();
+    }
+
+    TrackIdGenerator(PersistentTrackIdEpoch persistentEpoch) {
+        this(persistentEpoch.get(), new Reservation() {
+            @Override
+            public long reserve() {
+                return DbAdapter.getInstance().reserveTrackIds();
+            }
+        });
+    }
+
+    TrackIdGenerator(long epoch, Reservation reservation) {
+        mEpoch = epoch & ((1 << EPOCH_BITS) - 1);
+        mReservation = reservation;
+    }
+
+    /**
+     * 生成下一个 _track_id
+     *
+     * @return _track_id
+     */
+    synchronized long nextTrackId() {
+        if (mSequence >= mReservedLimit) {
+            reserve();
+        }
+        long sequence = mSequence++;
+        return (mEpoch << 32) | (sequence & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 预留下一块序号，预留失败时退回随机序号
+     */
+    private void reserve() {
+        long start = -1;
+        try {
+            start = mReservation.reserve();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+        if (start < 0) {
+            BzLog.i(TAG, "Failed to reserve _track_id, fall back to a random sequence");
+            start = new SecureRandom().nextInt() & 0xFFFFFFFFL;
+        }
+        mSequence = start;
+        mReservedLimit = start + DbParams.TRACK_ID_BLOCK_SIZE;
+    }
+}
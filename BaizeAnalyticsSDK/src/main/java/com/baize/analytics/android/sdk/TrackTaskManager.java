@@ -17,17 +17,56 @@
 
 package com.baize.analytics.android.sdk;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 
 public class TrackTaskManager {
+    /**
+     * 任务优先级：可丢弃的自动采集事件，如 $AppClick、$AppViewScreen
+     */
+    static final int PRIORITY_LOW = 0;
+    /**
+     * 任务优先级：默认
+     */
+    static final int PRIORITY_NORMAL = 1;
+    /**
+     * 任务优先级：用户属性、登录、崩溃等不应丢弃的任务
+     */
+    static final int PRIORITY_HIGH = 2;
+    /**
+     * 队列默认容量
+     */
+    static final int DEFAULT_CAPACITY = 5000;
+    private static final String TAG = "SA.TrackTaskManager";
     private static TrackTaskManager trackTaskManager;
     /**
-     * 请求线程队列
+     * 请求线程队列锁
+     */
+    private final Object mLock = new Object();
+    /**
+     * 按队列容量预先分配的任务槽，每个优先级一个链表，按入队序号恢复整体的先后顺序；淘汰时直接移除最低优先级链表的表头，不需要扫描
+     */
+    private final TaskSlots mTrackEventTasks = new TaskSlots(DEFAULT_CAPACITY);
+    private int mCapacity = DEFAULT_CAPACITY;
+    private int mSize;
+    /**
+     * 下一个任务的入队序号
+     */
+    private long mNextSequence;
+    private int mOverflowPolicy = BaizeQueueOverflowPolicy.DROP_LOWEST_PRIORITY;
+    /**
+     * 被丢弃的任务数
      */
-    private final LinkedList<Runnable> mTrackEventTasks;
+    private long mDroppedTaskCount;
+    /**
+     * 消费任务的线程，该线程内入队时不能阻塞
+     */
+    private Thread mConsumerThread;
+    /**
+     * 是否有待处理的唤醒信号，防止唤醒发生在 wait 之前而丢失
+     */
+    private boolean mWakeUpPending;
 
     private TrackTaskManager() {
-        mTrackEventTasks = new LinkedList<>();
     }
 
     public static synchronized TrackTaskManager getInstance() {
@@ -41,10 +80,51 @@ public class TrackTaskManager {
         return trackTaskManager;
     }
 
+    /**
+     * 设置队列容量和溢出策略，已在队列中的任务会被保留
+     *
+     * @param capacity 队列容量
+     * @param overflowPolicy 溢出策略，参考 {@link BaizeQueueOverflowPolicy}
+     */
+    void setQueueConfig(int capacity, int overflowPolicy) {
+        synchronized (mLock) {
+            mOverflowPolicy = overflowPolicy;
+            if (capacity <= 0 || capacity == mCapacity) {
+                return;
+            }
+            // 容量变小时保留最新的任务
+            while (mSize > capacity) {
+                poll();
+                mDroppedTaskCount++;
+            }
+            mCapacity = capacity;
+            mTrackEventTasks.resize(capacity);
+            mLock.notifyAll();
+        }
+    }
+
     public void addTrackEventTask(Runnable trackEvenTask) {
+        addTrackEventTask(trackEvenTask, PRIORITY_NORMAL);
+    }
+
+    /**
+     * 添加任务，队列已满时按溢出策略处理
+     *
+     * @param trackEvenTask 任务
+     * @param priority 任务优先级，{@link #PRIORITY_LOW}、{@link #PRIORITY_NORMAL}、{@link #PRIORITY_HIGH}
+     */
+    public void addTrackEventTask(Runnable trackEvenTask, int priority) {
         try {
-            synchronized (mTrackEventTasks) {
-                mTrackEventTasks.addLast(trackEvenTask);
+            synchronized (mLock) {
+                priority = Math.max(PRIORITY_LOW, Math.min(PRIORITY_HIGH, priority));
+                if (mSize >= mCapacity && !makeRoom(priority)) {
+                    mDroppedTaskCount++;
+                    BzLog.i(TAG, "Track task queue is full, drop the new task");
+                    return;
+                }
+                mTrackEventTasks.add(priority, trackEvenTask, mNextSequence++);
+                mSize++;
+                mLock.notifyAll();
             }
         } catch (Exception e) {
             BzLog.printStackTrace(e);
@@ -53,14 +133,220 @@ public class TrackTaskManager {
 
     public Runnable getTrackEventTask() {
         try {
-            synchronized (mTrackEventTasks) {
-                if (mTrackEventTasks.size() > 0) {
-                    return mTrackEventTasks.removeFirst();
-                }
+            synchronized (mLock) {
+                return poll();
             }
         } catch (Exception e) {
             BzLog.printStackTrace(e);
         }
         return null;
     }
+
+    /**
+     * 阻塞获取任务，队列为空时挂起线程，直到有新任务加入或被 {@link #wakeUp()} 唤醒
+     *
+     * @return 队首任务，被唤醒且队列为空时返回 null
+     * @throws InterruptedException 线程被中断
+     */
+    Runnable takeTrackEventTask() throws InterruptedException {
+        synchronized (mLock) {
+            mConsumerThread = Thread.currentThread();
+            while (mSize == 0 && !mWakeUpPending) {
+                mLock.wait();
+            }
+            mWakeUpPending = false;
+            return poll();
+        }
+    }
+
+    /**
+     * 唤醒阻塞在 {@link #takeTrackEventTask()} 上的线程，用于停止任务线程
+     */
+    void wakeUp() {
+        synchronized (mLock) {
+            mWakeUpPending = true;
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * 获取因队列已满而被丢弃的任务数
+     *
+     * @return 丢弃的任务数
+     */
+    long getDroppedTaskCount() {
+        synchronized (mLock) {
+            return mDroppedTaskCount;
+        }
+    }
+
+    /**
+     * 需在持有 mLock 时调用
+     */
+    private Runnable poll() {
+        if (mSize == 0) {
+            return null;
+        }
+        // 各优先级表头中入队最早的任务
+        int oldest = -1;
+        for (int i = PRIORITY_LOW; i <= PRIORITY_HIGH; i++) {
+            if (mTrackEventTasks.size(i) > 0
+                    && (oldest < 0 || mTrackEventTasks.peekSequence(i) < mTrackEventTasks.peekSequence(oldest))) {
+                oldest = i;
+            }
+        }
+        Runnable task = mTrackEventTasks.poll(oldest);
+        mSize--;
+        // 通知 BLOCK 策略下等待的生产者
+        mLock.notifyAll();
+        return task;
+    }
+
+    /**
+     * 队列已满时按溢出策略腾出空位，需在持有 mLock 时调用
+     *
+     * @param priority 新任务的优先级
+     * @return true：已腾出空位，false：应丢弃新任务
+     */
+    private boolean makeRoom(int priority) {
+        switch (mOverflowPolicy) {
+            case BaizeQueueOverflowPolicy.BLOCK:
+                // 消费线程内阻塞会导致死锁，此时丢弃新任务
+                if (Thread.currentThread() == mConsumerThread) {
+                    return false;
+                }
+                try {
+                    while (mSize >= mCapacity) {
+                        mLock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    // 保留中断状态，丢弃新任务
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                return true;
+            case BaizeQueueOverflowPolicy.DROP_NEWEST:
+                return false;
+            case BaizeQueueOverflowPolicy.DROP_OLDEST:
+                poll();
+                mDroppedTaskCount++;
+                return true;
+            case BaizeQueueOverflowPolicy.DROP_LOWEST_PRIORITY:
+            default:
+                // 丢弃优先级不高于新任务的最低优先级中最早的任务
+                for (int i = PRIORITY_LOW; i <= priority; i++) {
+                    if (mTrackEventTasks.size(i) > 0) {
+                        mTrackEventTasks.poll(i);
+                        mSize--;
+                        mDroppedTaskCount++;
+                        return true;
+                    }
+                }
+                return false;
+        }
+    }
+
+    /**
+     * 所有优先级共用的任务槽，按队列容量一次性分配，入队和出队不再分配内存。
+     * 每个优先级的任务通过 next 串成链表，空闲的槽组成空闲链表；只在修改队列容量时重新分配。
+     * 需在持有 mLock 时访问，调用方保证任务数不超过容量
+     */
+    private static final class TaskSlots {
+        private static final int NONE = -1;
+        private Runnable[] tasks;
+        private long[] sequences;
+        private int[] next;
+        private int free;
+        private final int[] heads = new int[PRIORITY_HIGH + 1];
+        private final int[] tails = new int[PRIORITY_HIGH + 1];
+        private final int[] sizes = new int[PRIORITY_HIGH + 1];
+
+        TaskSlots(int capacity) {
+            Arrays.fill(heads, NONE);
+            Arrays.fill(tails, NONE);
+            allocate(capacity);
+        }
+
+        int size(int priority) {
+            return sizes[priority];
+        }
+
+        void add(int priority, Runnable task, long sequence) {
+            int slot = free;
+            free = next[slot];
+            tasks[slot] = task;
+            sequences[slot] = sequence;
+            next[slot] = NONE;
+            if (tails[priority] == NONE) {
+                heads[priority] = slot;
+            } else {
+                next[tails[priority]] = slot;
+            }
+            tails[priority] = slot;
+            sizes[priority]++;
+        }
+
+        long peekSequence(int priority) {
+            return sequences[heads[priority]];
+        }
+
+        Runnable poll(int priority) {
+            int slot = heads[priority];
+            Runnable task = tasks[slot];
+            heads[priority] = next[slot];
+            if (heads[priority] == NONE) {
+                tails[priority] = NONE;
+            }
+            sizes[priority]--;
+            tasks[slot] = null;
+            next[slot] = free;
+            free = slot;
+            return task;
+        }
+
+        /**
+         * 按新的容量重新分配，保留各优先级中的任务，调用前任务数已不超过新容量
+         */
+        void resize(int capacity) {
+            Runnable[] oldTasks = tasks;
+            long[] oldSequences = sequences;
+            int[] oldNext = next;
+            allocate(capacity);
+            int slot = 0;
+            for (int i = 0; i < heads.length; i++) {
+                int head = NONE;
+                int tail = NONE;
+                for (int old = heads[i]; old != NONE; old = oldNext[old]) {
+                    tasks[slot] = oldTasks[old];
+                    sequences[slot] = oldSequences[old];
+                    if (tail == NONE) {
+                        head = slot;
+                    } else {
+                        next[tail] = slot;
+                    }
+                    tail = slot++;
+                }
+                if (tail != NONE) {
+                    next[tail] = NONE;
+                }
+                heads[i] = head;
+                tails[i] = tail;
+            }
+            // 剩余的槽组成空闲链表
+            for (int i = slot; i < capacity; i++) {
+                next[i] = i + 1 < capacity ? i + 1 : NONE;
+            }
+            free = slot < capacity ? slot : NONE;
+        }
+
+        private void allocate(int capacity) {
+            tasks = new Runnable[capacity];
+            sequences = new long[capacity];
+            next = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                next[i] = i + 1 < capacity ? i + 1 : NONE;
+            }
+            free = capacity > 0 ? 0 : NONE;
+        }
+    }
 }
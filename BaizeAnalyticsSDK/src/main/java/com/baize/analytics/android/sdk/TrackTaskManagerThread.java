@@ -17,33 +17,16 @@
 
 package com.baize.analytics.android.sdk;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
-
 public class TrackTaskManagerThread implements Runnable {
-    /**
-     * 创建一个可重用固定线程数的线程池
-     */
-    private static final int POOL_SIZE = 1;
-    /**
-     * 轮询时间，单位：毫秒
-     */
-    private static final int SLEEP_TIME = 300;
     private TrackTaskManager mTrackTaskManager;
-    /**
-     * 创建一个可重用固定线程数的线程池
-     */
-    private ExecutorService mPool;
     /**
      * 是否停止
      */
-    private boolean isStop = false;
+    private volatile boolean isStop = false;
 
     public TrackTaskManagerThread() {
         try {
             this.mTrackTaskManager = TrackTaskManager.getInstance();
-            mPool = Executors.newFixedThreadPool(POOL_SIZE);
         } catch (Exception e) {
             BzLog.printStackTrace(e);
         }
@@ -53,35 +36,41 @@ public class TrackTaskManagerThread implements Runnable {
     public void run() {
         try {
             while (!isStop) {
-                Runnable downloadTask = mTrackTaskManager.getTrackEventTask();
-                if (downloadTask != null) {
-                    mPool.execute(downloadTask);
-                } else {//如果当前任务队列中没有下载任务downloadTask
-                    try {
-                        // 查询任务完成失败的,重新加载任务队列
-                        // 轮询
-                        Thread.sleep(SLEEP_TIME);
-                    } catch (InterruptedException e) {
-                        BzLog.printStackTrace(e);
+                try {
+                    // 队列为空时挂起，有新任务或停止信号时唤醒
+                    Runnable trackTask = mTrackTaskManager.takeTrackEventTask();
+                    if (trackTask != null) {
+                        runTask(trackTask);
                     }
+                } catch (InterruptedException e) {
+                    BzLog.printStackTrace(e);
                 }
             }
 
-            if (isStop) {
-                Runnable downloadTask = mTrackTaskManager.getTrackEventTask();
-                while (downloadTask != null) {
-                    mPool.execute(downloadTask);
-                    downloadTask = mTrackTaskManager.getTrackEventTask();
-                }
-                mPool.shutdown();
+            // 停止后执行完队列中剩余的任务
+            Runnable trackTask = mTrackTaskManager.getTrackEventTask();
+            while (trackTask != null) {
+                runTask(trackTask);
+                trackTask = mTrackTaskManager.getTrackEventTask();
             }
         } catch (Exception e) {
             BzLog.printStackTrace(e);
         }
     }
 
+    private void runTask(Runnable trackTask) {
+        try {
+            trackTask.run();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+    }
+
     void setStop(boolean isStop) {
         this.isStop = isStop;
+        if (isStop && mTrackTaskManager != null) {
+            mTrackTaskManager.wakeUp();
+        }
     }
 
     boolean isStopped() {
@@ -0,0 +1,169 @@
+/*
+ * Created by bkb on 2020/06/20.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk;
+
+import com.baize.analytics.android.sdk.data.EventBatch;
+import com.baize.analytics.android.sdk.data.EventStore;
+
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上报流水线：最多同时上报 window 批 id 范围不重叠的事件，按读取顺序等待结果并确认删除。
+ * 某一批失败后不再读取新的批次，等待已发出的请求结束后返回，之后的批次即使成功也不删除，
+ * 下次从失败的批次开始重新上报，保证至少上报一次，且删除的 id 单调递增。
+ * window 为 1 时在调用线程中逐批上报，与串行上报相同。
+ */
+/* package */ class UploadPipeline {
+    private static final String TAG = "SA.UploadPipeline";
+    /* 同时上报的批次上限 */
+    static final int MAX_WINDOW = 4;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private final EventStore mEventStore;
+    private ThreadPoolExecutor mExecutor;
+
+    /**
+     * 上报一批事件
+     */
+    interface Uploader {
+        /**
+         * @param batch 事件
+         * @return 是否删除这批事件
+         */
+        boolean upload(EventBatch batch);
+    }
+
+    /**
+     * 读取下一批事件
+     */
+    interface BatchReader {
+        /**
+         * @param afterId 上一批的 id，为 null 时从头读取
+         * @return 一批事件，没有事件时返回 null
+         */
+        EventBatch read(String afterId);
+    }
+
+    /**
+     * @param eventStore 事件存储，读取时以其为锁
+     */
+    UploadPipeline(EventStore eventStore) {
+        mEventStore = eventStore;
+    }
+
+    /**
+     * 上报存储中的所有事件，直到全部上报或者某一批失败
+     *
+     * @param reader 读取批次
+     * @param uploader 上报批次
+     * @param window 同时上报的批次数，范围 1 到 {@link #MAX_WINDOW}
+     * @return 确认删除的批数
+     */
+    int drain(BatchReader reader, final Uploader uploader, int window) {
+        window = Math.max(1, Math.min(MAX_WINDOW, window));
+        LinkedList<Pending> inFlight = new LinkedList<>();
+        String afterId = null;
+        boolean reading = true;
+        int acked = 0;
+        while (true) {
+            while (reading && inFlight.size() < window) {
+                EventBatch batch;
+                synchronized (mEventStore) {
+                    batch = reader.read(afterId);
+                }
+                if (batch == null) {
+                    reading = false;
+                    break;
+                }
+                afterId = batch.getLastId();
+                inFlight.add(dispatch(batch, uploader, window));
+            }
+            if (inFlight.isEmpty()) {
+                return acked;
+            }
+            Pending head = inFlight.removeFirst();
+            if (head.await()) {
+                int count = mEventStore.ack(head.batch.getLastId());
+                acked++;
+                BzLog.i(TAG, String.format(Locale.CHINA, "Events flushed. [left = %d]", count));
+            } else {
+                // 等待已发出的请求结束，结果不再处理
+                reading = false;
+                for (Pending pending : inFlight) {
+                    pending.await();
+                }
+                return acked;
+            }
+        }
+    }
+
+    private Pending dispatch(final EventBatch batch, final Uploader uploader, int window) {
+        FutureTask<Boolean> task = new FutureTask<>(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return uploader.upload(batch);
+            }
+        });
+        if (window == 1) {
+            task.run();
+        } else {
+            getExecutor().execute(task);
+        }
+        return new Pending(batch, task);
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = new ThreadPoolExecutor(MAX_WINDOW, MAX_WINDOW, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, ThreadNameConstants.THREAD_UPLOAD);
+                }
+            });
+            // 空闲时回收全部线程
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+        return mExecutor;
+    }
+
+    private static class Pending {
+        final EventBatch batch;
+        final FutureTask<Boolean> task;
+
+        Pending(EventBatch batch, FutureTask<Boolean> task) {
+            this.batch = batch;
+            this.task = task;
+        }
+
+        boolean await() {
+            try {
+                return task.get();
+            } catch (Exception e) {
+                BzLog.printStackTrace(e);
+                return false;
+            }
+        }
+    }
+}
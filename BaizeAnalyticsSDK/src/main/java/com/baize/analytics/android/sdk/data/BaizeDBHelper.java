@@ -18,20 +18,82 @@
 package com.baize.analytics.android.sdk.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.baize.analytics.android.sdk.BzLog;
 
 class BaizeDBHelper extends SQLiteOpenHelper {
     private static final String TAG = "SA.SQLiteOpenHelper";
     private static final String CREATE_EVENTS_TABLE =
-            String.format("CREATE TABLE %s (_id INTEGER PRIMARY KEY AUTOINCREMENT, %s TEXT NOT NULL, %s INTEGER NOT NULL);", DbParams.TABLE_EVENTS, DbParams.KEY_DATA, DbParams.KEY_CREATED_AT);
+            String.format("CREATE TABLE %s (_id INTEGER PRIMARY KEY AUTOINCREMENT, %s TEXT NOT NULL, %s INTEGER NOT NULL, %s INTEGER, %s INTEGER NOT NULL DEFAULT %d, %s TEXT);",
+                    DbParams.TABLE_EVENTS, DbParams.KEY_DATA, DbParams.KEY_CREATED_AT, DbParams.KEY_CRC, DbParams.KEY_PRIORITY, EventEvictor.PRIORITY_NORMAL, DbParams.KEY_PS_HASH);
     private static final String EVENTS_TIME_INDEX =
             String.format("CREATE INDEX IF NOT EXISTS time_idx ON %s (%s);", DbParams.TABLE_EVENTS, DbParams.KEY_CREATED_AT);
+    private static final String EVENTS_PS_HASH_INDEX =
+            String.format("CREATE INDEX IF NOT EXISTS ps_hash_idx ON %s (%s);", DbParams.TABLE_EVENTS, DbParams.KEY_PS_HASH);
+    private static final String ADD_CRC_COLUMN =
+            String.format("ALTER TABLE %s ADD COLUMN %s INTEGER;", DbParams.TABLE_EVENTS, DbParams.KEY_CRC);
+    private static final String ADD_PRIORITY_COLUMN =
+            String.format("ALTER TABLE %s ADD COLUMN %s INTEGER NOT NULL DEFAULT %d;", DbParams.TABLE_EVENTS, DbParams.KEY_PRIORITY, EventEvictor.PRIORITY_NORMAL);
+    private static final String ADD_PS_HASH_COLUMN =
+            String.format("ALTER TABLE %s ADD COLUMN %s TEXT;", DbParams.TABLE_EVENTS, DbParams.KEY_PS_HASH);
+    // 已提取属性集合的旧数据以 {"_ps":"<32 位 hash>" 开头
+    private static final String FILL_PS_HASH_COLUMN =
+            String.format("UPDATE %s SET %s = substr(CAST(%s AS TEXT), 9, 32) WHERE substr(CAST(%s AS TEXT), 1, 8) = '{\"_ps\":\"';",
+                    DbParams.TABLE_EVENTS, DbParams.KEY_PS_HASH, DbParams.KEY_DATA, DbParams.KEY_DATA);
+    private static final String CREATE_PROPERTY_SETS_TABLE =
+            String.format("CREATE TABLE IF NOT EXISTS %s (%s TEXT PRIMARY KEY, %s TEXT NOT NULL);", DbParams.TABLE_PROPERTY_SETS, DbParams.KEY_HASH, DbParams.KEY_DATA);
+
+    private static BaizeDBHelper instance;
 
     BaizeDBHelper(Context context) {
         super(context, DbParams.DATABASE_NAME, null, DbParams.DATABASE_VERSION);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    /**
+     * 获取进程内共享的 BaizeDBHelper，ContentProvider 和 EventsDatabase 使用同一个数据库连接，
+     * 避免同一进程内多个连接互相等待锁
+     *
+     * @param context Context
+     * @return BaizeDBHelper
+     */
+    static synchronized BaizeDBHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new BaizeDBHelper(context);
+        }
+        return instance;
+    }
+
+    /**
+     * 打开数据库时开启 WAL 和 synchronous=NORMAL，此时还没有其它线程使用该连接
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
+        Cursor cursor = null;
+        try {
+            // PRAGMA 有返回值，需要通过 rawQuery 执行
+            cursor = db.rawQuery("PRAGMA synchronous=NORMAL", null);
+            cursor.moveToFirst();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
     }
 
     @Override
@@ -40,14 +102,37 @@ class BaizeDBHelper extends SQLiteOpenHelper {
 
         db.execSQL(CREATE_EVENTS_TABLE);
         db.execSQL(EVENTS_TIME_INDEX);
+        db.execSQL(EVENTS_PS_HASH_INDEX);
+        db.execSQL(CREATE_PROPERTY_SETS_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion >= 4) {
+            // 版本 5 增加了 PropertySets 表，版本 6 增加了 crc 字段，版本 7 增加了 priority 字段，版本 8 增加了 ps_hash 字段，Event 表中的旧数据兼容，保留未上报的数据
+            BzLog.i(TAG, "Upgrading app, migrating Baize Analytics DB");
+            if (oldVersion < 5) {
+                db.execSQL(CREATE_PROPERTY_SETS_TABLE);
+            }
+            if (oldVersion < 6) {
+                db.execSQL(ADD_CRC_COLUMN);
+            }
+            if (oldVersion < 7) {
+                db.execSQL(ADD_PRIORITY_COLUMN);
+            }
+            if (oldVersion < 8) {
+                db.execSQL(ADD_PS_HASH_COLUMN);
+                db.execSQL(FILL_PS_HASH_COLUMN);
+                db.execSQL(EVENTS_PS_HASH_INDEX);
+            }
+            return;
+        }
         BzLog.i(TAG, "Upgrading app, replacing Baize Analytics DB");
 
         db.execSQL(String.format("DROP TABLE IF EXISTS %s", DbParams.TABLE_EVENTS));
         db.execSQL(CREATE_EVENTS_TABLE);
         db.execSQL(EVENTS_TIME_INDEX);
+        db.execSQL(EVENTS_PS_HASH_INDEX);
+        db.execSQL(CREATE_PROPERTY_SETS_TABLE);
     }
 }
@@ -24,6 +24,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
@@ -35,11 +36,7 @@ import com.baize.analytics.android.sdk.data.persistent.PersistentAppPaused;
 import com.baize.analytics.android.sdk.data.persistent.PersistentAppStartTime;
 import com.baize.analytics.android.sdk.data.persistent.PersistentLoginId;
 import com.baize.analytics.android.sdk.data.persistent.PersistentSessionIntervalTime;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.io.File;
+import com.baize.analytics.android.sdk.data.persistent.PersistentTrackIdSequence;
 
 public class BaizeDataContentProvider extends ContentProvider {
     private final static int EVENTS = 1;
@@ -49,6 +46,13 @@ public class BaizeDataContentProvider extends ContentProvider {
     private final static int APP_PAUSED_TIME = 5;
     private final static int SESSION_INTERVAL_TIME = 6;
     private final static int LOGIN_ID = 7;
+    private final static int EVENTS_COUNT = 8;
+    private final static int PROPERTY_SETS = 9;
+    private final static int EVENTS_SIZE = 10;
+    private final static int LEGACY_MIGRATION = 11;
+    private final static int TRACK_ID_BLOCK = 12;
+    private final static String PROPERTY_SET_EXISTS =
+            String.format("SELECT COUNT(*) FROM %s WHERE %s = ?", DbParams.TABLE_PROPERTY_SETS, DbParams.KEY_HASH);
     private static UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
 
     private BaizeDBHelper dbHelper;
@@ -58,9 +62,13 @@ public class BaizeDataContentProvider extends ContentProvider {
     private PersistentAppPaused persistentAppPaused;
     private PersistentSessionIntervalTime persistentSessionIntervalTime;
     private PersistentLoginId persistentLoginId;
+    private PersistentTrackIdSequence persistentTrackIdSequence;
+    private LegacyEventsMigrator legacyEventsMigrator;
 
     private boolean isDbWritable = true;
     private int startActivityCount = 0;
+    /* Event 表的数据条数，第一次使用时通过 COUNT(*) 获取，之后随插入和删除更新，-1 表示未获取 */
+    private int eventsCount = -1;
 
     @Override
     public boolean onCreate() {
@@ -82,42 +90,21 @@ public class BaizeDataContentProvider extends ContentProvider {
             uriMatcher.addURI(authority, DbParams.TABLE_APP_END_TIME, APP_PAUSED_TIME);
             uriMatcher.addURI(authority, DbParams.TABLE_SESSION_INTERVAL_TIME, SESSION_INTERVAL_TIME);
             uriMatcher.addURI(authority, DbParams.TABLE_LOGIN_ID, LOGIN_ID);
-            dbHelper = new BaizeDBHelper(context);
-
-            /* 迁移数据，并删除老的数据库 */
-            try {
-                File oldDatabase = context.getDatabasePath(packageName);
-                if (oldDatabase.exists()) {
-                    OldBDatabaseHelper oldBDatabaseHelper = new OldBDatabaseHelper(context, packageName);
-
-                    JSONArray oldEvents = oldBDatabaseHelper.getAllEvents();
-                    for (int i = 0; i < oldEvents.length(); i++) {
-                        JSONObject jsonObject = oldEvents.getJSONObject(i);
-                        final ContentValues cv = new ContentValues();
-                        cv.put(DbParams.KEY_DATA, jsonObject.getString(DbParams.KEY_DATA));
-                        cv.put(DbParams.KEY_CREATED_AT, jsonObject.getString(DbParams.KEY_CREATED_AT));
-
-                        try {
-                            SQLiteDatabase database = dbHelper.getWritableDatabase();
-                            database.insert(DbParams.TABLE_EVENTS, "_id", cv);
-                        } catch (SQLiteException e) {
-                            isDbWritable = false;
-                            BzLog.printStackTrace(e);
-                        }
-                    }
-                }
-                if (isDbWritable) {
-                    context.deleteDatabase(packageName);
-                }
-            } catch (Exception e) {
-                BzLog.printStackTrace(e);
-            }
+            uriMatcher.addURI(authority, DbParams.TABLE_EVENTS_COUNT, EVENTS_COUNT);
+            uriMatcher.addURI(authority, DbParams.TABLE_PROPERTY_SETS, PROPERTY_SETS);
+            uriMatcher.addURI(authority, DbParams.TABLE_EVENTS_SIZE, EVENTS_SIZE);
+            uriMatcher.addURI(authority, DbParams.TABLE_LEGACY_MIGRATION, LEGACY_MIGRATION);
+            uriMatcher.addURI(authority, DbParams.TABLE_TRACK_ID_BLOCK, TRACK_ID_BLOCK);
+            dbHelper = BaizeDBHelper.getInstance(context);
+            /* 老数据库的迁移由存储线程通过 LEGACY_MIGRATION 分批触发 */
+            legacyEventsMigrator = new LegacyEventsMigrator(context, packageName);
             PersistentLoader.initLoader(context);
             persistentAppEndData = (PersistentAppEndData) PersistentLoader.loadPersistent(DbParams.TABLE_APP_END_DATA);
             persistentAppStartTime = (PersistentAppStartTime) PersistentLoader.loadPersistent(DbParams.TABLE_APP_START_TIME);
             persistentAppPaused = (PersistentAppPaused) PersistentLoader.loadPersistent(DbParams.TABLE_APP_END_TIME);
             persistentSessionIntervalTime = (PersistentSessionIntervalTime) PersistentLoader.loadPersistent(DbParams.TABLE_SESSION_INTERVAL_TIME);
             persistentLoginId = (PersistentLoginId) PersistentLoader.loadPersistent(DbParams.TABLE_LOGIN_ID);
+            persistentTrackIdSequence = (PersistentTrackIdSequence) PersistentLoader.loadPersistent(PersistentLoader.PersistentName.TRACK_ID_SEQUENCE);
         }
         return true;
     }
@@ -134,6 +121,18 @@ public class BaizeDataContentProvider extends ContentProvider {
                 try {
                     SQLiteDatabase database = dbHelper.getWritableDatabase();
                     deletedCounts = database.delete(DbParams.TABLE_EVENTS, selection, selectionArgs);
+                    if (selection == null) {
+                        resetEventsCount(0);
+                    } else {
+                        adjustEventsCount(-deletedCounts);
+                    }
+                } catch (SQLiteException e) {
+                    isDbWritable = false;
+                    BzLog.printStackTrace(e);
+                }
+            } else if (PROPERTY_SETS == code) {
+                try {
+                    deletedCounts = dbHelper.getWritableDatabase().delete(DbParams.TABLE_PROPERTY_SETS, selection, selectionArgs);
                 } catch (SQLiteException e) {
                     isDbWritable = false;
                     BzLog.printStackTrace(e);
@@ -171,8 +170,36 @@ public class BaizeDataContentProvider extends ContentProvider {
                 if (!values.containsKey(DbParams.KEY_DATA) || !values.containsKey(DbParams.KEY_CREATED_AT)) {
                     return uri;
                 }
-                long d = database.insert(DbParams.TABLE_EVENTS, "_id", values);
+                long d;
+                String hash = values.getAsString(DbParams.KEY_PS_HASH);
+                if (hash == null) {
+                    d = database.insert(DbParams.TABLE_EVENTS, "_id", values);
+                } else {
+                    // 属性集合可能已被其它进程删除，检查和插入放在同一个事务中，与删除属性集合互斥
+                    database.beginTransaction();
+                    try {
+                        if (DatabaseUtils.longForQuery(database, PROPERTY_SET_EXISTS, new String[]{hash}) == 0) {
+                            database.setTransactionSuccessful();
+                            return null;
+                        }
+                        d = database.insert(DbParams.TABLE_EVENTS, "_id", values);
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                }
+                if (d != -1) {
+                    adjustEventsCount(1);
+                }
                 return ContentUris.withAppendedId(uri, d);
+            } else if (code == PROPERTY_SETS) {
+                try {
+                    // 相同哈希的属性集合内容相同，已存在时忽略
+                    dbHelper.getWritableDatabase().insertWithOnConflict(DbParams.TABLE_PROPERTY_SETS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+                } catch (SQLiteException e) {
+                    isDbWritable = false;
+                    BzLog.printStackTrace(e);
+                }
             } else {
                 insert(code, uri, values);
             }
@@ -189,6 +216,7 @@ public class BaizeDataContentProvider extends ContentProvider {
             return 0;
         }
         int numValues;
+        boolean success = false;
         SQLiteDatabase database = null;
         try {
             try {
@@ -201,13 +229,21 @@ public class BaizeDataContentProvider extends ContentProvider {
             database.beginTransaction();
             numValues = values.length;
             for (int i = 0; i < numValues; i++) {
-                insert(uri, values[i]);
+                if (insert(uri, values[i]) == null) {
+                    // 属性集合已被删除，整体回滚，由调用方重新保存属性集合后再插入
+                    return 0;
+                }
             }
             database.setTransactionSuccessful();
+            success = true;
         } finally {
             if (database != null) {
                 database.endTransaction();
             }
+            if (!success) {
+                // 事务回滚，插入时累加的条数不再准确，下次使用时重新获取
+                resetEventsCount(-1);
+            }
         }
         return numValues;
     }
@@ -220,9 +256,10 @@ public class BaizeDataContentProvider extends ContentProvider {
         Cursor cursor = null;
         try {
             int code = uriMatcher.match(uri);
-            if (code == EVENTS) {
+            if (code == EVENTS || code == PROPERTY_SETS) {
                 try {
-                    cursor = dbHelper.getWritableDatabase().query(DbParams.TABLE_EVENTS, projection, selection, selectionArgs, null, null, sortOrder);
+                    String table = code == EVENTS ? DbParams.TABLE_EVENTS : DbParams.TABLE_PROPERTY_SETS;
+                    cursor = dbHelper.getWritableDatabase().query(table, projection, selection, selectionArgs, null, null, sortOrder);
                 } catch (SQLiteException e) {
                     isDbWritable = false;
                     BzLog.printStackTrace(e);
@@ -258,6 +295,7 @@ public class BaizeDataContentProvider extends ContentProvider {
                 break;
             case APP_PAUSED_TIME:
                 persistentAppPaused.commit(values.getAsLong(DbParams.TABLE_APP_END_TIME));
+                contentResolver.notifyChange(uri, null);
                 break;
             case APP_END_DATA:
                 persistentAppEndData.commit(values.getAsString(DbParams.TABLE_APP_END_DATA));
@@ -268,6 +306,7 @@ public class BaizeDataContentProvider extends ContentProvider {
                 break;
             case LOGIN_ID:
                 persistentLoginId.commit(values.getAsString(DbParams.TABLE_LOGIN_ID));
+                contentResolver.notifyChange(uri, null);
                 break;
             default:
                 break;
@@ -307,6 +346,23 @@ public class BaizeDataContentProvider extends ContentProvider {
             case LOGIN_ID:
                 data = persistentLoginId.get();
                 column = DbParams.TABLE_LOGIN_ID;
+                break;
+            case EVENTS_COUNT:
+                data = getEventsCount();
+                column = DbParams.TABLE_EVENTS_COUNT;
+                break;
+            case EVENTS_SIZE:
+                data = getDatabaseSize(dbHelper.getWritableDatabase());
+                column = DbParams.TABLE_EVENTS_SIZE;
+                break;
+            case LEGACY_MIGRATION:
+                data = migrateLegacyEvents();
+                column = DbParams.TABLE_LEGACY_MIGRATION;
+                break;
+            case TRACK_ID_BLOCK:
+                data = persistentTrackIdSequence.reserve(DbParams.TRACK_ID_BLOCK_SIZE);
+                column = DbParams.TABLE_TRACK_ID_BLOCK;
+                break;
             default:
                 break;
         }
@@ -315,4 +371,75 @@ public class BaizeDataContentProvider extends ContentProvider {
         matrixCursor.addRow(new Object[]{data});
         return matrixCursor;
     }
+
+    /**
+     * 从老数据库迁移一批数据
+     *
+     * @return 是否还有未迁移的数据，1 表示有，0 表示没有
+     */
+    private int migrateLegacyEvents() {
+        if (legacyEventsMigrator.isFinished()) {
+            return 0;
+        }
+        try {
+            adjustEventsCount(legacyEventsMigrator.migrate(dbHelper.getWritableDatabase(), LegacyEventsMigrator.CHUNK_SIZE));
+        } catch (SQLiteException e) {
+            isDbWritable = false;
+            BzLog.printStackTrace(e);
+            return 0;
+        }
+        return legacyEventsMigrator.isFinished() ? 0 : 1;
+    }
+
+    /**
+     * 获取 Event 表的数据条数，只在第一次调用时查询数据库
+     *
+     * @return 数据条数
+     */
+    private synchronized int getEventsCount() {
+        if (eventsCount < 0) {
+            Cursor cursor = null;
+            try {
+                cursor = dbHelper.getWritableDatabase().rawQuery("SELECT COUNT(*) FROM " + DbParams.TABLE_EVENTS, null);
+                if (cursor != null && cursor.moveToFirst()) {
+                    eventsCount = cursor.getInt(0);
+                }
+            } catch (SQLiteException e) {
+                isDbWritable = false;
+                BzLog.printStackTrace(e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+        return Math.max(eventsCount, 0);
+    }
+
+    /**
+     * 更新 Event 表的数据条数，未获取过时不处理
+     *
+     * @param delta 变化的条数
+     */
+    private synchronized void adjustEventsCount(int delta) {
+        if (eventsCount >= 0) {
+            eventsCount = Math.max(0, eventsCount + delta);
+        }
+    }
+
+    private synchronized void resetEventsCount(int count) {
+        eventsCount = count;
+    }
+
+    /**
+     * 获取数据库有效数据占用的字节数，删除数据后空闲的页不计入
+     *
+     * @param database SQLiteDatabase
+     * @return 字节数
+     */
+    static long getDatabaseSize(SQLiteDatabase database) {
+        long pageCount = DatabaseUtils.longForQuery(database, "PRAGMA page_count", null);
+        long freelistCount = DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null);
+        return (pageCount - freelistCount) * database.getPageSize();
+    }
 }
@@ -20,35 +20,56 @@ package com.baize.analytics.android.sdk.data;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteException;
-import android.text.TextUtils;
 
 import com.baize.analytics.android.sdk.BaizeAPI;
 import com.baize.analytics.android.sdk.BzLog;
 
 import org.json.JSONObject;
 
-import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
-public class DbAdapter {
+public class DbAdapter implements EventStore {
     private static final String TAG = "SA.DbAdapter";
+    /* 读取事件时每页的条数 */
+    private static final int PAGE_SIZE = 50;
+    static final String[] EVENTS_PROJECTION = {"_id", DbParams.KEY_DATA, DbParams.KEY_CRC};
     private static DbAdapter instance;
-    private final File mDatabaseFile;
     private final DbParams mDbParams;
     private final Context mContext;
     /* Session 时长间隔 */
-    private int mSessionTime = 30 * 1000;
+    private volatile int mSessionTime = 30 * 1000;
     /* $AppEnd 事件触发的时间戳 */
-    private long mAppEndTime = 0;
+    private volatile long mAppEndTime = 0;
+    /* 登录 ID 缓存 */
+    private volatile String mLoginId;
+    /* 缓存是否有效，多进程模式下其它进程修改后置为 false，下次读取时重新查询 */
+    private volatile boolean mLoginIdCached = false;
+    private volatile boolean mSessionTimeCached = false;
+    private volatile boolean mAppEndTimeCached = false;
+    private boolean mIdentityObserverRegistered = false;
+    /* 单进程模式下直接访问数据库，为 null 时通过 ContentProvider 访问 */
+    private volatile EventsDatabase mEventsDatabase;
+    /* 事件中重复的公共属性单独存储 */
+    private final PropertySets mPropertySets;
+    /* 单进程模式下事件的写入和属性集合的清理互斥，避免清理掉刚写入、尚未被事件引用的属性集合 */
+    private final Object mPropertySetLock = new Object();
+    /* 缓存超过上限时淘汰事件 */
+    private final EventEvictor mEventEvictor;
+    private final LegacyEventsMigrator mLegacyEventsMigrator;
     private ContentResolver contentResolver;
 
     private DbAdapter(Context context, String packageName) {
         mContext = context.getApplicationContext();
         contentResolver = mContext.getContentResolver();
-        mDatabaseFile = context.getDatabasePath(DbParams.DATABASE_NAME);
         mDbParams = DbParams.getInstance(packageName);
+        mPropertySets = new PropertySets(new PropertySetStorage());
+        mEventEvictor = new EventEvictor(new EvictionTarget());
+        mLegacyEventsMigrator = new LegacyEventsMigrator(mContext, packageName);
     }
 
     public static DbAdapter getInstance(Context context, String packageName) {
@@ -65,20 +86,68 @@ public class DbAdapter {
         return instance;
     }
 
-    private long getMaxCacheSize(Context context) {
+    /**
+     * 设置是否为多进程模式。
+     * 多进程模式下监听其它进程对登录 ID、Session 时长、$AppEnd 时间戳的修改，使本进程的缓存失效；
+     * 单进程模式下事件的读写直接访问数据库，不经过 ContentProvider
+     *
+     * @param multiProcess 是否为多进程模式
+     */
+    public synchronized void setMultiProcess(boolean multiProcess) {
+        if (!multiProcess) {
+            if (mEventsDatabase == null) {
+                try {
+                    mEventsDatabase = new EventsDatabase(mContext);
+                } catch (Exception e) {
+                    BzLog.printStackTrace(e);
+                }
+            }
+            return;
+        }
+        if (mIdentityObserverRegistered) {
+            return;
+        }
         try {
-            return BaizeAPI.sharedInstance(context).getMaxCacheSize();
+            contentResolver.registerContentObserver(mDbParams.getLoginIdUri(), false, new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    mLoginIdCached = false;
+                }
+            });
+            contentResolver.registerContentObserver(mDbParams.getSessionTimeUri(), false, new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    mSessionTimeCached = false;
+                }
+            });
+            contentResolver.registerContentObserver(mDbParams.getAppPausedUri(), false, new ContentObserver(null) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    mAppEndTimeCached = false;
+                }
+            });
+            mIdentityObserverRegistered = true;
         } catch (Exception e) {
             BzLog.printStackTrace(e);
-            return 32 * 1024 * 1024;
         }
     }
 
-    private boolean belowMemThreshold() {
-        if (mDatabaseFile.exists()) {
-            return mDatabaseFile.length() >= getMaxCacheSize(mContext);
+    /**
+     * 设置事件中重复的公共属性名，这些属性提取到 PropertySets 表中，事件只保存属性集合的哈希
+     *
+     * @param keys 属性名
+     */
+    public void setSharedPropertyKeys(Collection<String> keys) {
+        mPropertySets.setSharedKeys(keys);
+    }
+
+    private long getMaxCacheSize(Context context) {
+        try {
+            return BaizeAPI.sharedInstance(context).getMaxCacheSize();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+            return 32 * 1024 * 1024;
         }
-        return false;
     }
 
     /**
@@ -94,27 +163,30 @@ public class DbAdapter {
         int count = DbParams.DB_UPDATE_ERROR;
         Cursor c = null;
         try {
-            if (belowMemThreshold()) {
-                BzLog.i(TAG, "There is not enough space left on the device to store events, so will delete 100 oldest events");
-                String[] eventsData = generateDataString(DbParams.TABLE_EVENTS, 100);
-                if (eventsData == null) {
-                    return DbParams.DB_OUT_OF_MEMORY_ERROR;
-                }
+            if (!mEventEvictor.ensureCapacity()) {
+                return DbParams.DB_OUT_OF_MEMORY_ERROR;
+            }
 
-                final String lastId = eventsData[0];
-                count = cleanupEvents(lastId);
-                if (count <= 0) {
-                    return DbParams.DB_OUT_OF_MEMORY_ERROR;
+            final int priority = EventEvictor.priorityOf(j);
+            EventsDatabase eventsDatabase = mEventsDatabase;
+            if (eventsDatabase != null) {
+                synchronized (mPropertySetLock) {
+                    byte[] data = mPropertySets.encode(j);
+                    mEventEvictor.onInserted(data.length);
+                    return eventsDatabase.insert(data, priority, System.currentTimeMillis());
                 }
             }
-
-            final ContentValues cv = new ContentValues();
-            cv.put(DbParams.KEY_DATA, j.toString() + "\t" + j.toString().hashCode());
-            cv.put(DbParams.KEY_CREATED_AT, System.currentTimeMillis());
-            contentResolver.insert(mDbParams.getEventUri(), cv);
-            c = contentResolver.query(mDbParams.getEventUri(), null, null, null, null);
-            if (c != null) {
-                count = c.getCount();
+            byte[] data = mPropertySets.encode(j);
+            mEventEvictor.onInserted(data.length);
+            if (contentResolver.insert(mDbParams.getEventUri(), eventValues(data, priority)) == null) {
+                // 引用的属性集合已被其它进程删除，重新保存后再插入一次
+                mPropertySets.reset();
+                data = mPropertySets.encode(j);
+                contentResolver.insert(mDbParams.getEventUri(), eventValues(data, priority));
+            }
+            c = contentResolver.query(mDbParams.getEventsCountUri(), null, null, null, null);
+            if (c != null && c.moveToFirst()) {
+                count = c.getInt(0);
             }
         } catch (Exception e) {
             BzLog.printStackTrace(e);
@@ -139,31 +211,32 @@ public class DbAdapter {
         int count = DbParams.DB_UPDATE_ERROR;
         Cursor c = null;
         try {
-            if (belowMemThreshold()) {
-                BzLog.i(TAG, "There is not enough space left on the device to store events, so will delete 100 oldest events");
-                String[] eventsData = generateDataString(DbParams.TABLE_EVENTS, 100);
-                if (eventsData == null) {
-                    return DbParams.DB_OUT_OF_MEMORY_ERROR;
-                }
-                final String lastId = eventsData[0];
-                count = cleanupEvents(lastId);
-                if (count <= 0) {
-                    return DbParams.DB_OUT_OF_MEMORY_ERROR;
+            if (!mEventEvictor.ensureCapacity()) {
+                return DbParams.DB_OUT_OF_MEMORY_ERROR;
+            }
+            EventsDatabase eventsDatabase = mEventsDatabase;
+            if (eventsDatabase != null) {
+                synchronized (mPropertySetLock) {
+                    List<byte[]> dataList = new ArrayList<>(eventsList.size());
+                    int[] priorities = new int[eventsList.size()];
+                    for (JSONObject j : eventsList) {
+                        byte[] data = mPropertySets.encode(j);
+                        priorities[dataList.size()] = EventEvictor.priorityOf(j);
+                        dataList.add(data);
+                        mEventEvictor.onInserted(data.length);
+                    }
+                    return eventsDatabase.insert(dataList, priorities, System.currentTimeMillis());
                 }
             }
-            ContentValues[] contentValues = new ContentValues[eventsList.size()];
-            ContentValues cv;
-            int index = 0;
-            for (JSONObject j : eventsList) {
-                cv = new ContentValues();
-                cv.put(DbParams.KEY_DATA, j.toString() + "\t" + j.toString().hashCode());
-                cv.put(DbParams.KEY_CREATED_AT, System.currentTimeMillis());
-                contentValues[index++] = cv;
-            }
-            contentResolver.bulkInsert(mDbParams.getEventUri(), contentValues);
-            c = contentResolver.query(mDbParams.getEventUri(), null, null, null, null);
-            if (c != null) {
-                count = c.getCount();
+            ContentValues[] contentValues = encodeEvents(eventsList, true);
+            if (contentValues.length > 0 && contentResolver.bulkInsert(mDbParams.getEventUri(), contentValues) == 0) {
+                // 引用的属性集合已被其它进程删除，整体回滚，重新保存后再插入一次
+                mPropertySets.reset();
+                contentResolver.bulkInsert(mDbParams.getEventUri(), encodeEvents(eventsList, false));
+            }
+            c = contentResolver.query(mDbParams.getEventsCountUri(), null, null, null, null);
+            if (c != null && c.moveToFirst()) {
+                count = c.getInt(0);
             }
         } catch (Exception e) {
             BzLog.printStackTrace(e);
@@ -179,12 +252,97 @@ public class DbAdapter {
         return count;
     }
 
+    /**
+     * 通过 ContentProvider 写入时的 Event 表字段
+     *
+     * @param data 事件 JSON 的 UTF-8 字节
+     * @param priority 淘汰时的优先级
+     * @return ContentValues
+     */
+    private ContentValues eventValues(byte[] data, int priority) {
+        ContentValues cv = new ContentValues();
+        cv.put(DbParams.KEY_DATA, data);
+        cv.put(DbParams.KEY_CREATED_AT, System.currentTimeMillis());
+        cv.put(DbParams.KEY_CRC, EventRecords.checksum(data));
+        cv.put(DbParams.KEY_PRIORITY, priority);
+        cv.put(DbParams.KEY_PS_HASH, PropertySets.hashOf(data));
+        return cv;
+    }
+
+    private ContentValues[] encodeEvents(List<JSONObject> eventsList, boolean countSize) {
+        ContentValues[] contentValues = new ContentValues[eventsList.size()];
+        int index = 0;
+        for (JSONObject j : eventsList) {
+            byte[] data = mPropertySets.encode(j);
+            contentValues[index++] = eventValues(data, EventEvictor.priorityOf(j));
+            if (countSize) {
+                mEventEvictor.onInserted(data.length);
+            }
+        }
+        return contentValues;
+    }
+
+    /**
+     * 从老版本数据库迁移一批事件，由存储线程反复调用直到返回 false
+     *
+     * @return 是否还有未迁移的数据
+     */
+    public boolean migrateLegacyEvents() {
+        Cursor c = null;
+        try {
+            EventsDatabase eventsDatabase = mEventsDatabase;
+            if (eventsDatabase != null) {
+                return eventsDatabase.migrateLegacyEvents(mLegacyEventsMigrator);
+            }
+            c = contentResolver.query(mDbParams.getLegacyMigrationUri(), null, null, null, null);
+            return c != null && c.moveToFirst() && c.getInt(0) == 1;
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 通过 ContentProvider 预留一块 _track_id 序号，多进程共用同一个计数
+     *
+     * @return 起始序号，个数为 {@link DbParams#TRACK_ID_BLOCK_SIZE}，失败时返回 -1
+     */
+    public long reserveTrackIds() {
+        Cursor c = null;
+        try {
+            c = contentResolver.query(mDbParams.getTrackIdBlockUri(), null, null, null, null);
+            if (c != null && c.moveToFirst()) {
+                return c.getLong(0);
+            }
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        } finally {
+            if (c != null) {
+                c.close();
+            }
+        }
+        return -1;
+    }
+
     /**
      * Removes all events from table
      */
     public void deleteAllEvents() {
         try {
+            EventsDatabase eventsDatabase = mEventsDatabase;
+            if (eventsDatabase != null) {
+                synchronized (mPropertySetLock) {
+                    eventsDatabase.deleteAll();
+                    mPropertySets.prune();
+                }
+                return;
+            }
             contentResolver.delete(mDbParams.getEventUri(), null, null);
+            mPropertySets.prune();
         } catch (Exception e) {
             BzLog.printStackTrace(e);
         }
@@ -201,10 +359,21 @@ public class DbAdapter {
         int count = DbParams.DB_UPDATE_ERROR;
 
         try {
+            EventsDatabase eventsDatabase = mEventsDatabase;
+            if (eventsDatabase != null) {
+                // 删除事件后清理没有事件引用的属性集合，在写入锁内完成，期间不会有新的事件引用被清理的属性集合
+                synchronized (mPropertySetLock) {
+                    count = eventsDatabase.cleanup(last_id);
+                    mPropertySets.prune();
+                }
+                return count;
+            }
+            // 多进程模式下其它进程可能刚保存了属性集合还未写入事件，ContentProvider 会拒绝引用已删除属性集合的事件，由写入方重新保存
             contentResolver.delete(mDbParams.getEventUri(), "_id <= ?", new String[]{last_id});
-            c = contentResolver.query(mDbParams.getEventUri(), null, null, null, null);
-            if (c != null) {
-                count = c.getCount();
+            mPropertySets.prune();
+            c = contentResolver.query(mDbParams.getEventsCountUri(), null, null, null, null);
+            if (c != null && c.moveToFirst()) {
+                count = c.getInt(0);
             }
         } catch (Exception e) {
             BzLog.printStackTrace(e);
@@ -297,6 +466,7 @@ public class DbAdapter {
             BzLog.printStackTrace(ex);
         }
         mAppEndTime = appPausedTime;
+        mAppEndTimeCached = true;
     }
 
     /**
@@ -305,7 +475,7 @@ public class DbAdapter {
      * @return Activity Pause 的时间戳
      */
     public long getAppEndTime() {
-        if (System.currentTimeMillis() - mAppEndTime > mSessionTime) {
+        if (!mAppEndTimeCached) {
             Cursor cursor = null;
             try {
                 cursor = contentResolver.query(mDbParams.getAppPausedUri(), null, null, null, null);
@@ -314,6 +484,7 @@ public class DbAdapter {
                         mAppEndTime = cursor.getLong(0);
                     }
                 }
+                mAppEndTimeCached = true;
             } catch (Exception e) {
                 BzLog.printStackTrace(e);
             } finally {
@@ -366,6 +537,8 @@ public class DbAdapter {
         ContentValues contentValues = new ContentValues();
         contentValues.put(DbParams.TABLE_LOGIN_ID, loginId);
         contentResolver.insert(mDbParams.getLoginIdUri(), contentValues);
+        mLoginId = loginId;
+        mLoginIdCached = true;
     }
 
     /**
@@ -374,6 +547,9 @@ public class DbAdapter {
      * @return LoginId
      */
     public String getLoginId() {
+        if (mLoginIdCached) {
+            return mLoginId;
+        }
         String data = "";
         Cursor cursor = contentResolver.query(mDbParams.getLoginIdUri(), null, null, null, null);
         if (cursor != null && cursor.getCount() > 0) {
@@ -386,6 +562,8 @@ public class DbAdapter {
             cursor.close();
         }
         BzLog.d(TAG, "getLoginId:" + data);
+        mLoginId = data;
+        mLoginIdCached = cursor != null;
         return data;
     }
 
@@ -399,6 +577,8 @@ public class DbAdapter {
             ContentValues contentValues = new ContentValues();
             contentValues.put(DbParams.TABLE_SESSION_INTERVAL_TIME, sessionIntervalTime);
             contentResolver.insert(mDbParams.getSessionTimeUri(), contentValues);
+            mSessionTime = sessionIntervalTime;
+            mSessionTimeCached = true;
         } catch (Exception e) {
             BzLog.printStackTrace(e);
         }
@@ -410,6 +590,9 @@ public class DbAdapter {
      * @return Session 的时长
      */
     public int getSessionIntervalTime() {
+        if (mSessionTimeCached) {
+            return mSessionTime;
+        }
         Cursor cursor = null;
         try {
             cursor = contentResolver.query(mDbParams.getSessionTimeUri(), null, null, null, null);
@@ -418,6 +601,7 @@ public class DbAdapter {
                     mSessionTime = cursor.getInt(0);
                 }
             }
+            mSessionTimeCached = cursor != null;
         } catch (Exception e) {
             BzLog.printStackTrace(e);
         } finally {
@@ -438,61 +622,244 @@ public class DbAdapter {
      * @return 数据
      */
     public String[] generateDataString(String tableName, int limit) {
-        Cursor c = null;
-        String data = null;
-        String last_id = null;
-        try {
-            c = contentResolver.query(mDbParams.getEventUri(), null, null, null, DbParams.KEY_CREATED_AT + " ASC LIMIT " + limit);
+        EventBatch batch = peek(limit, 0);
+        if (batch == null) {
+            return null;
+        }
+        return new String[]{batch.getLastId(), batch.toString()};
+    }
 
-            if (c != null) {
-                StringBuilder dataBuilder = new StringBuilder();
-                final String flush_time = ",\"_flush_time\":";
-                String suffix = ",";
-                dataBuilder.append("[");
-                String keyData, crc, content;
-                while (c.moveToNext()) {
-                    if (c.isLast()) {
-                        suffix = "]";
-                        last_id = c.getString(c.getColumnIndex("_id"));
+    @Override
+    public int append(JSONObject event) {
+        return addJSON(event);
+    }
+
+    @Override
+    public int append(List<JSONObject> events) {
+        return addJSON(events);
+    }
+
+    /**
+     * 按 _id 分页读取，每页最多 PAGE_SIZE 条，直到达到条数或字节数限制，避免单个 CursorWindow 过大
+     */
+    @Override
+    public EventBatch peek(int limit, long maxBytes) {
+        return peek(null, limit, maxBytes);
+    }
+
+    @Override
+    public EventBatch peek(String afterId, int limit, long maxBytes) {
+        EventBatch batch = new EventBatch(System.currentTimeMillis());
+        int count = 0;
+        try {
+            while (count < limit && !batch.isFull(maxBytes)) {
+                int pageSize = Math.min(PAGE_SIZE, limit - count);
+                int rows = 0;
+                Cursor c = null;
+                try {
+                    String pageAfterId = batch.getLastId() != null ? batch.getLastId() : afterId;
+                    EventsDatabase eventsDatabase = mEventsDatabase;
+                    if (eventsDatabase != null) {
+                        c = eventsDatabase.query(pageAfterId, pageSize);
+                    } else {
+                        c = contentResolver.query(mDbParams.getEventUri(), EVENTS_PROJECTION,
+                                pageAfterId == null ? null : "_id > ?", pageAfterId == null ? null : new String[]{pageAfterId},
+                                "_id ASC LIMIT " + pageSize);
+                    }
+                    if (c == null) {
+                        break;
                     }
-                    try {
-                        keyData = c.getString(c.getColumnIndex(DbParams.KEY_DATA));
-                        if (!TextUtils.isEmpty(keyData)) {
-                            int index = keyData.lastIndexOf("\t");
-                            if (index > -1) {
-                                crc = keyData.substring(index).replaceFirst("\t", "");
-                                content = keyData.substring(0, index);
-                                if (TextUtils.isEmpty(content) || TextUtils.isEmpty(crc)
-                                        || !crc.equals(String.valueOf(content.hashCode()))) {
-                                    continue;
-                                }
-                                keyData = content;
-                            }
-                            dataBuilder.append(keyData, 0, keyData.length() - 1)
-                                    .append(flush_time)
-                                    .append(System.currentTimeMillis())
-                                    .append("}").append(suffix);
+                    int idIndex = c.getColumnIndex("_id");
+                    int dataIndex = c.getColumnIndex(DbParams.KEY_DATA);
+                    int crcIndex = c.getColumnIndex(DbParams.KEY_CRC);
+                    while (c.moveToNext()) {
+                        rows++;
+                        count++;
+                        batch.setLastId(c.getString(idIndex));
+                        try {
+                            appendEvent(batch, c, dataIndex, crcIndex);
+                        } catch (Exception e) {
+                            BzLog.printStackTrace(e);
                         }
-                    } catch (Exception e) {
-                        BzLog.printStackTrace(e);
+                        if (batch.isFull(maxBytes)) {
+                            break;
+                        }
+                    }
+                } finally {
+                    if (c != null) {
+                        c.close();
                     }
                 }
-                data = dataBuilder.toString();
+                if (rows < pageSize) {
+                    break;
+                }
             }
         } catch (final SQLiteException e) {
-            BzLog.i(TAG, "Could not pull records for Baize out of database " + tableName
+            BzLog.i(TAG, "Could not pull records for Baize out of database " + DbParams.TABLE_EVENTS
                     + ". Waiting to send.", e);
-            last_id = null;
-            data = null;
+            return null;
+        }
+        return batch.getLastId() != null ? batch : null;
+    }
+
+    /**
+     * 将一行数据写入 batch：新数据为 UTF-8 字节并带有 CRC32，直接写入；旧数据为 "事件 JSON\t校验值" 的文本
+     */
+    private void appendEvent(EventBatch batch, Cursor c, int dataIndex, int crcIndex) throws Exception {
+        if (crcIndex >= 0 && !c.isNull(crcIndex)) {
+            byte[] data = c.getBlob(dataIndex);
+            if (!PropertySets.isInterned(data)) {
+                batch.append(data, c.getLong(crcIndex));
+            } else if (EventRecords.checksum(data) == c.getLong(crcIndex)) {
+                // 按字节插入缓存的属性集合，不解析事件
+                byte[] event = mPropertySets.expand(data);
+                if (event != null) {
+                    batch.append(event);
+                } else {
+                    BzLog.i(TAG, "The property set of the event is missing, skip it");
+                }
+            }
+            return;
+        }
+        String content = EventRecords.decode(c.getString(dataIndex));
+        if (PropertySets.isInterned(content)) {
+            content = mPropertySets.expand(content);
+        }
+        if (content != null) {
+            batch.append(content.getBytes(EventRecords.CHARSET));
+        }
+    }
+
+    @Override
+    public int ack(String lastId) {
+        return cleanupEvents(lastId);
+    }
+
+    @Override
+    public void clear() {
+        deleteAllEvents();
+    }
+
+    @Override
+    public int count() {
+        EventsDatabase eventsDatabase = mEventsDatabase;
+        if (eventsDatabase != null) {
+            return eventsDatabase.count();
+        }
+        int count = 0;
+        Cursor c = null;
+        try {
+            c = contentResolver.query(mDbParams.getEventsCountUri(), null, null, null, null);
+            if (c != null && c.moveToFirst()) {
+                count = c.getInt(0);
+            }
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
         } finally {
             if (c != null) {
                 c.close();
             }
         }
+        return count;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        return mEventEvictor.size();
+    }
+
+    /**
+     * 单进程模式下直接访问数据库，否则通过 ContentProvider 访问 PropertySets 表
+     */
+    private class PropertySetStorage implements PropertySets.Storage {
+        @Override
+        public void save(String hash, String data) {
+            EventsDatabase eventsDatabase = mEventsDatabase;
+            if (eventsDatabase != null) {
+                eventsDatabase.insertPropertySet(hash, data);
+                return;
+            }
+            ContentValues cv = new ContentValues();
+            cv.put(DbParams.KEY_HASH, hash);
+            cv.put(DbParams.KEY_DATA, data);
+            contentResolver.insert(mDbParams.getPropertySetsUri(), cv);
+        }
+
+        @Override
+        public String load(String hash) {
+            EventsDatabase eventsDatabase = mEventsDatabase;
+            if (eventsDatabase != null) {
+                return eventsDatabase.queryPropertySet(hash);
+            }
+            Cursor c = null;
+            try {
+                c = contentResolver.query(mDbParams.getPropertySetsUri(), new String[]{DbParams.KEY_DATA},
+                        DbParams.KEY_HASH + " = ?", new String[]{hash}, null);
+                if (c != null && c.moveToFirst()) {
+                    return c.getString(0);
+                }
+            } finally {
+                if (c != null) {
+                    c.close();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void prune() {
+            EventsDatabase eventsDatabase = mEventsDatabase;
+            if (eventsDatabase != null) {
+                eventsDatabase.prunePropertySets();
+                return;
+            }
+            contentResolver.delete(mDbParams.getPropertySetsUri(), DbParams.UNREFERENCED_PROPERTY_SETS, null);
+        }
+    }
+
+    /**
+     * 单进程模式下直接访问数据库，否则通过 ContentProvider 查询大小和删除事件
+     */
+    private class EvictionTarget implements EventEvictor.Target {
+        @Override
+        public long maxSize() {
+            return getMaxCacheSize(mContext);
+        }
+
+        @Override
+        public long databaseSize() {
+            EventsDatabase eventsDatabase = mEventsDatabase;
+            if (eventsDatabase != null) {
+                return eventsDatabase.databaseSize();
+            }
+            Cursor c = null;
+            try {
+                c = contentResolver.query(mDbParams.getEventsSizeUri(), null, null, null, null);
+                if (c != null && c.moveToFirst()) {
+                    return c.getLong(0);
+                }
+            } finally {
+                if (c != null) {
+                    c.close();
+                }
+            }
+            return -1;
+        }
 
-        if (last_id != null) {
-            return new String[]{last_id, data};
+        @Override
+        public int count() {
+            return DbAdapter.this.count();
+        }
+
+        @Override
+        public int delete(int priority, int limit) {
+            EventsDatabase eventsDatabase = mEventsDatabase;
+            if (eventsDatabase != null) {
+                return eventsDatabase.evict(priority, limit);
+            }
+            return contentResolver.delete(mDbParams.getEventUri(),
+                    String.format("_id IN (SELECT _id FROM %s WHERE %s = ? ORDER BY _id LIMIT ?)", DbParams.TABLE_EVENTS, DbParams.KEY_PRIORITY),
+                    new String[]{String.valueOf(priority), String.valueOf(limit)});
         }
-        return null;
     }
 }
\ No newline at end of file
@@ -23,24 +23,50 @@ public class DbParams {
     /* 数据库中的表名 */
     public static final String TABLE_EVENTS = "events";
     public static final int DB_OUT_OF_MEMORY_ERROR = -2;
+    /* 每次预留的 _track_id 序号个数 */
+    public static final int TRACK_ID_BLOCK_SIZE = 1000;
     /* 数据库名称 */
     static final String DATABASE_NAME = "baizedata";
     /* 数据库版本号 */
-    static final int DATABASE_VERSION = 4;
+    static final int DATABASE_VERSION = 8;
     static final String TABLE_ACTIVITY_START_COUNT = "activity_started_count";
     static final String TABLE_APP_START_TIME = "app_start_time";
     static final String TABLE_APP_END_TIME = "app_end_time";
     static final String TABLE_APP_END_DATA = "app_end_data";
     static final String TABLE_SESSION_INTERVAL_TIME = "session_interval_time";
     static final String TABLE_LOGIN_ID = "events_login_id";
+    /* Event 表的数据条数，不是真实的表 */
+    static final String TABLE_EVENTS_COUNT = "events_count";
+    /* 事件中重复的公共属性集合，按内容哈希存储 */
+    static final String TABLE_PROPERTY_SETS = "property_sets";
+    /* Event 表有效数据占用的字节数，不是真实的表 */
+    static final String TABLE_EVENTS_SIZE = "events_size";
+    /* 老数据库的迁移进度，迁移完成后删除 */
+    static final String TABLE_LEGACY_MIGRATION = "legacy_migration";
+    /* 预留 _track_id 序号，由 ContentProvider 所在进程统一分配 */
+    static final String TABLE_TRACK_ID_BLOCK = "track_id_block";
     /* Event 表字段 */
     static final String KEY_DATA = "data";
     static final String KEY_CREATED_AT = "created_at";
+    /* data 的 CRC32，旧数据为 NULL */
+    static final String KEY_CRC = "crc";
+    /* 淘汰时的优先级，见 EventEvictor */
+    static final String KEY_PRIORITY = "priority";
+    /* 事件引用的属性集合，未提取属性集合时为 NULL */
+    static final String KEY_PS_HASH = "ps_hash";
+    /* 迁移进度表字段，已迁移的老数据库中最后一条数据的 _id */
+    static final String KEY_LAST_ID = "last_id";
+    /* PropertySets 表字段 */
+    static final String KEY_HASH = "hash";
+    /* 没有事件引用的属性集合 */
+    static final String UNREFERENCED_PROPERTY_SETS = String.format("%s NOT IN (SELECT DISTINCT %s FROM %s WHERE %s IS NOT NULL)",
+            KEY_HASH, KEY_PS_HASH, TABLE_EVENTS, KEY_PS_HASH);
     /* 数据库状态 */
     static final int DB_UPDATE_ERROR = -1;
     private static DbParams instance;
     private final Uri mUri, mActivityStartCountUri, mAppStartTimeUri, mAppEndUri,
-            mAppEndDataUri, mSessionTimeUri, mLoginIdUri;
+            mAppEndDataUri, mSessionTimeUri, mLoginIdUri, mEventsCountUri, mPropertySetsUri, mEventsSizeUri,
+            mLegacyMigrationUri, mTrackIdBlockUri;
 
     private DbParams(String packageName) {
         mUri = Uri.parse("content://" + packageName + ".BaizeDataContentProvider/" + TABLE_EVENTS);
@@ -50,6 +76,11 @@ public class DbParams {
         mAppEndUri = Uri.parse("content://" + packageName + ".BaizeDataContentProvider/" + TABLE_APP_END_TIME);
         mSessionTimeUri = Uri.parse("content://" + packageName + ".BaizeDataContentProvider/" + TABLE_SESSION_INTERVAL_TIME);
         mLoginIdUri = Uri.parse("content://" + packageName + ".BaizeDataContentProvider/" + TABLE_LOGIN_ID);
+        mEventsCountUri = Uri.parse("content://" + packageName + ".BaizeDataContentProvider/" + TABLE_EVENTS_COUNT);
+        mPropertySetsUri = Uri.parse("content://" + packageName + ".BaizeDataContentProvider/" + TABLE_PROPERTY_SETS);
+        mEventsSizeUri = Uri.parse("content://" + packageName + ".BaizeDataContentProvider/" + TABLE_EVENTS_SIZE);
+        mLegacyMigrationUri = Uri.parse("content://" + packageName + ".BaizeDataContentProvider/" + TABLE_LEGACY_MIGRATION);
+        mTrackIdBlockUri = Uri.parse("content://" + packageName + ".BaizeDataContentProvider/" + TABLE_TRACK_ID_BLOCK);
     }
 
     public static DbParams getInstance(String packageName) {
@@ -128,4 +159,49 @@ public class DbParams {
     Uri getLoginIdUri() {
         return mLoginIdUri;
     }
+
+    /**
+     * 获取 Event 表数据条数的 Uri
+     *
+     * @return Uri
+     */
+    Uri getEventsCountUri() {
+        return mEventsCountUri;
+    }
+
+    /**
+     * 获取 PropertySets 表的 Uri
+     *
+     * @return Uri
+     */
+    Uri getPropertySetsUri() {
+        return mPropertySetsUri;
+    }
+
+    /**
+     * 获取数据库有效数据字节数的 Uri
+     *
+     * @return Uri
+     */
+    Uri getEventsSizeUri() {
+        return mEventsSizeUri;
+    }
+
+    /**
+     * 获取迁移老数据库的 Uri，每次查询迁移一批数据
+     *
+     * @return Uri
+     */
+    Uri getLegacyMigrationUri() {
+        return mLegacyMigrationUri;
+    }
+
+    /**
+     * 获取预留 _track_id 序号的 Uri
+     *
+     * @return Uri
+     */
+    Uri getTrackIdBlockUri() {
+        return mTrackIdBlockUri;
+    }
 }
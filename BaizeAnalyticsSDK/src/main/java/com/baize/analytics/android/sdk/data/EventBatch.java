@@ -0,0 +1,188 @@
+/*
+ * Created by bkb on 2020/06/15.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.CRC32;
+
+/**
+ * 一批待上报的事件，以 UTF-8 字节拼接为 JSON 数组。
+ * 存储的事件字节直接写入，_flush_time 在创建时按批次编码一次，追加到每条事件末尾。
+ */
+public final class EventBatch {
+    private static final String CHARSET = "UTF-8";
+    private byte[] mBuffer = new byte[4096];
+    private int mSize;
+    private int mCount;
+    private String mLastId;
+    /* ,"_flush_time":xxx} */
+    private final byte[] mFlushTimeSuffix;
+
+    EventBatch(long flushTime) {
+        mFlushTimeSuffix = toBytes(",\"_flush_time\":" + flushTime + "}");
+        mBuffer[mSize++] = '[';
+    }
+
+    /**
+     * 写入一条事件
+     *
+     * @param data 事件 JSON 的 UTF-8 字节
+     * @param offset 起始位置
+     * @param length 长度
+     * @return 是否写入
+     */
+    boolean append(byte[] data, int offset, int length) {
+        // 至少包含 {"a":1}
+        if (data == null || length < 2 || data[offset + length - 1] != '}') {
+            return false;
+        }
+        ensureCapacity(mSize + length + mFlushTimeSuffix.length + 1);
+        if (mCount > 0) {
+            mBuffer[mSize++] = ',';
+        }
+        // 去掉末尾的 }，追加 _flush_time
+        System.arraycopy(data, offset, mBuffer, mSize, length - 1);
+        mSize += length - 1;
+        System.arraycopy(mFlushTimeSuffix, 0, mBuffer, mSize, mFlushTimeSuffix.length);
+        mSize += mFlushTimeSuffix.length;
+        mCount++;
+        return true;
+    }
+
+    boolean append(byte[] data) {
+        return data != null && append(data, 0, data.length);
+    }
+
+    /**
+     * 校验 CRC32 后写入一条事件
+     *
+     * @param data 事件 JSON 的 UTF-8 字节
+     * @param checksum 存储的 CRC32
+     * @return 是否写入
+     */
+    boolean append(byte[] data, long checksum) {
+        return data != null && EventRecords.checksum(data) == checksum && append(data, 0, data.length);
+    }
+
+    /**
+     * 写入旧格式 "事件 JSON\t校验值" 的事件
+     *
+     * @param record 存储的事件
+     * @return 是否写入
+     */
+    boolean appendRecord(String record) {
+        String content = EventRecords.decode(record);
+        return content != null && append(toBytes(content));
+    }
+
+    /**
+     * 是否达到字节数限制
+     *
+     * @param maxBytes 字节数限制，小于等于 0 时不限制
+     */
+    boolean isFull(long maxBytes) {
+        return maxBytes > 0 && mSize >= maxBytes;
+    }
+
+    void setLastId(String lastId) {
+        mLastId = lastId;
+    }
+
+    /**
+     * 获取最后一条事件的 id，上报成功后通过 {@link EventStore#ack(String)} 删除
+     *
+     * @return id
+     */
+    public String getLastId() {
+        return mLastId;
+    }
+
+    /**
+     * 获取事件条数
+     *
+     * @return 条数
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * 获取事件 JSON 数组的 UTF-8 字节
+     *
+     * @return 字节数组
+     */
+    public byte[] getData() {
+        byte[] data = new byte[mSize + 1];
+        System.arraycopy(mBuffer, 0, data, 0, mSize);
+        data[mSize] = ']';
+        return data;
+    }
+
+    /**
+     * 把事件 JSON 数组的 UTF-8 字节写入输出流，不复制缓冲区
+     *
+     * @param out 输出流
+     * @throws IOException 写入失败
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(mBuffer, 0, mSize);
+        out.write(']');
+    }
+
+    /**
+     * 获取事件 JSON 数组 UTF-8 字节的 CRC32
+     *
+     * @return CRC32
+     */
+    public long getChecksum() {
+        CRC32 crc32 = new CRC32();
+        crc32.update(mBuffer, 0, mSize);
+        crc32.update(']');
+        return crc32.getValue();
+    }
+
+    /**
+     * 获取事件 JSON 数组，用于日志
+     */
+    @Override
+    public String toString() {
+        try {
+            return new String(getData(), CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            return "";
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mBuffer.length) {
+            byte[] buffer = new byte[Math.max(capacity, mBuffer.length * 2)];
+            System.arraycopy(mBuffer, 0, buffer, 0, mSize);
+            mBuffer = buffer;
+        }
+    }
+
+    private static byte[] toBytes(String content) {
+        try {
+            return content.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            return new byte[0];
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Created by bkb on 2020/06/16.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import com.baize.analytics.android.sdk.BzLog;
+
+import org.json.JSONObject;
+
+/**
+ * 本地缓存超过上限时淘汰事件。
+ * 数据库大小按 (page_count - freelist_count) * page_size 查询并缓存，两次查询之间按写入的字节数估算；
+ * 超过上限时一次淘汰一批事件，使大小回到上限的 90%，按优先级从低到高、_id 从小到大删除，不读取事件内容。
+ */
+class EventEvictor {
+    private static final String TAG = "SA.EventEvictor";
+    /* 事件优先级，淘汰时先删除低优先级的事件 */
+    static final int PRIORITY_LOW = 0;
+    static final int PRIORITY_NORMAL = 1;
+    static final int PRIORITY_HIGH = 2;
+    /* 每次至少淘汰的条数 */
+    private static final int MIN_EVICT_COUNT = 100;
+    /* 写入多少条后重新查询数据库大小，修正估算值 */
+    private static final int REFRESH_INSERTS = 500;
+    private final Target mTarget;
+    /* 估算的数据库大小，-1 表示未查询 */
+    private long mEstimatedSize = -1;
+    private int mInsertsSinceRefresh = 0;
+
+    /**
+     * 被淘汰的存储
+     */
+    interface Target {
+        /**
+         * 缓存上限，单位 byte
+         */
+        long maxSize();
+
+        /**
+         * 数据库中有效数据占用的字节数
+         */
+        long databaseSize();
+
+        /**
+         * 事件条数
+         */
+        int count();
+
+        /**
+         * 按 _id 升序删除指定优先级的事件
+         *
+         * @return 删除的条数
+         */
+        int delete(int priority, int limit);
+    }
+
+    EventEvictor(Target target) {
+        mTarget = target;
+    }
+
+    /**
+     * 获取事件的优先级：注册、用户属性和崩溃事件为高优先级，$AppClick 为低优先级
+     *
+     * @param event 事件
+     * @return 优先级
+     */
+    static int priorityOf(JSONObject event) {
+        String type = event.optString("type");
+        if ("track_signup".equals(type) || type.startsWith("profile_")) {
+            return PRIORITY_HIGH;
+        }
+        String eventName = event.optString("event");
+        if ("AppCrashed".equals(eventName)) {
+            return PRIORITY_HIGH;
+        } else if ("$AppClick".equals(eventName)) {
+            return PRIORITY_LOW;
+        }
+        return PRIORITY_NORMAL;
+    }
+
+    /**
+     * 写入前检查缓存大小，超过上限时淘汰一批事件
+     *
+     * @return 是否可以写入，没有可淘汰的事件时返回 false
+     */
+    synchronized boolean ensureCapacity() {
+        long maxSize = mTarget.maxSize();
+        if (mEstimatedSize < 0 || mEstimatedSize >= maxSize || mInsertsSinceRefresh >= REFRESH_INSERTS) {
+            refresh();
+        }
+        if (mEstimatedSize < maxSize) {
+            return true;
+        }
+        int count = mTarget.count();
+        if (count <= 0) {
+            return false;
+        }
+        long averageSize = Math.max(1, mEstimatedSize / count);
+        int needed = (int) Math.min(count, Math.max(MIN_EVICT_COUNT, (mEstimatedSize - maxSize * 9 / 10) / averageSize));
+        BzLog.i(TAG, "There is not enough space left on the device to store events, so will delete " + needed + " events");
+        int deleted = 0;
+        for (int priority = PRIORITY_LOW; priority <= PRIORITY_HIGH && deleted < needed; priority++) {
+            deleted += mTarget.delete(priority, needed - deleted);
+        }
+        refresh();
+        return deleted > 0;
+    }
+
+    /**
+     * 写入后更新估算的大小
+     *
+     * @param bytes 写入的字节数
+     */
+    synchronized void onInserted(long bytes) {
+        if (mEstimatedSize >= 0) {
+            mEstimatedSize += bytes;
+        }
+        mInsertsSinceRefresh++;
+    }
+
+    /**
+     * 数据库大小，未查询过时查询一次
+     */
+    synchronized long size() {
+        if (mEstimatedSize < 0) {
+            refresh();
+        }
+        return Math.max(0, mEstimatedSize);
+    }
+
+    private void refresh() {
+        try {
+            mEstimatedSize = mTarget.databaseSize();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+        mInsertsSinceRefresh = 0;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Created by bkb on 2020/06/11.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baize.analytics.android.sdk.data;
+
+import android.text.TextUtils;
+
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.util.zip.CRC32;
+
+/**
+ * 事件的存储格式，各 EventStore 共用。
+ * 事件只序列化一次为 UTF-8 字节，CRC32 单独存储；文件存储和旧数据使用 "事件 JSON\t校验值" 的文本格式。
+ */
+final class EventRecords {
+    static final String CHARSET = "UTF-8";
+
+    private EventRecords() {
+    }
+
+    /**
+     * 将事件序列化为 UTF-8 字节
+     *
+     * @param event 事件
+     * @return 字节数组
+     */
+    static byte[] serialize(JSONObject event) {
+        try {
+            return event.toString().getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            return new byte[0];
+        }
+    }
+
+    /**
+     * 计算 CRC32
+     *
+     * @param data 事件字节
+     * @return CRC32
+     */
+    static long checksum(byte[] data) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, 0, data.length);
+        return crc32.getValue();
+    }
+
+    /**
+     * 将事件编码为文本格式
+     *
+     * @param event 事件
+     * @return "事件 JSON\t校验值"
+     */
+    static String encode(JSONObject event) {
+        String content = event.toString();
+        return content + "\t" + content.hashCode();
+    }
+
+    /**
+     * 校验文本格式的事件
+     *
+     * @param record "事件 JSON\t校验值"，没有校验值时不校验
+     * @return 事件 JSON，校验失败时返回 null
+     */
+    static String decode(String record) {
+        if (TextUtils.isEmpty(record)) {
+            return null;
+        }
+        int index = record.lastIndexOf("\t");
+        if (index < 0) {
+            return record;
+        }
+        String content = record.substring(0, index);
+        String crc = record.substring(index + 1);
+        if (TextUtils.isEmpty(content) || TextUtils.isEmpty(crc)
+                || !crc.equals(String.valueOf(content.hashCode()))) {
+            return null;
+        }
+        return content;
+    }
+}
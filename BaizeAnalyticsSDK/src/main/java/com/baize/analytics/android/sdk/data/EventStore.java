@@ -0,0 +1,88 @@
+/*
+ * Created by bkb on 2020/06/11.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baize.analytics.android.sdk.data;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * 事件存储，上报时按批读取，上报成功后确认删除
+ */
+public interface EventStore {
+    /**
+     * 写入一条事件
+     *
+     * @param event 事件
+     * @return 写入后的事件条数，失败时返回 DB_OUT_OF_MEMORY_ERROR/DB_UPDATE_ERROR
+     */
+    int append(JSONObject event);
+
+    /**
+     * 批量写入事件
+     *
+     * @param events 事件列表
+     * @return 写入后的事件条数，失败时返回 DB_OUT_OF_MEMORY_ERROR/DB_UPDATE_ERROR
+     */
+    int append(List<JSONObject> events);
+
+    /**
+     * 按写入顺序读取一批事件，不删除
+     *
+     * @param limit 条数限制
+     * @param maxBytes 字节数限制，小于等于 0 时不限制，至少返回一条
+     * @return 一批事件，没有事件时返回 null
+     */
+    EventBatch peek(int limit, long maxBytes);
+
+    /**
+     * 读取 id 在 afterId 之后的一批事件，不删除。用于上一批未确认时继续读取下一批
+     *
+     * @param afterId 上一批的 {@link EventBatch#getLastId()}，为 null 时等同于 {@link #peek(int, long)}
+     * @param limit 条数限制
+     * @param maxBytes 字节数限制，小于等于 0 时不限制，至少返回一条
+     * @return 一批事件，没有事件时返回 null
+     */
+    EventBatch peek(String afterId, int limit, long maxBytes);
+
+    /**
+     * 确认 id 小于等于 lastId 的事件已上报，删除这些事件
+     *
+     * @param lastId {@link EventBatch#getLastId()}
+     * @return 剩余的事件条数
+     */
+    int ack(String lastId);
+
+    /**
+     * 删除所有事件
+     */
+    void clear();
+
+    /**
+     * 获取事件条数
+     *
+     * @return 事件条数
+     */
+    int count();
+
+    /**
+     * 获取占用的存储空间
+     *
+     * @return 字节数
+     */
+    long sizeInBytes();
+}
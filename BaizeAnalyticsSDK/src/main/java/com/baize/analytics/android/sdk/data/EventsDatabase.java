@@ -0,0 +1,241 @@
+/*
+ * Created by bkb on 2020/06/10.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+
+import com.baize.analytics.android.sdk.BzLog;
+
+import java.util.List;
+
+/**
+ * 单进程模式下直接访问 SQLite 的 Event 表，不经过 ContentProvider。
+ * 插入、删除、计数使用预编译的 SQLiteStatement。
+ */
+class EventsDatabase {
+    private static final String TAG = "SA.EventsDatabase";
+    private final SQLiteDatabase mDatabase;
+    private final SQLiteStatement mInsertStatement;
+    private final SQLiteStatement mCleanupStatement;
+    private final SQLiteStatement mEvictStatement;
+    private final SQLiteStatement mCountStatement;
+    private final SQLiteStatement mInsertPropertySetStatement;
+    private final SQLiteStatement mQueryPropertySetStatement;
+    /* Event 表的数据条数，随插入和删除更新 */
+    private int mCount;
+
+    EventsDatabase(Context context) {
+        // 与 ContentProvider 共用同一个 BaizeDBHelper，WAL 和 synchronous 在 BaizeDBHelper 中设置
+        mDatabase = BaizeDBHelper.getInstance(context).getWritableDatabase();
+        mInsertStatement = mDatabase.compileStatement(String.format("INSERT INTO %s (%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?)",
+                DbParams.TABLE_EVENTS, DbParams.KEY_DATA, DbParams.KEY_CREATED_AT, DbParams.KEY_CRC, DbParams.KEY_PRIORITY, DbParams.KEY_PS_HASH));
+        mEvictStatement = mDatabase.compileStatement(String.format("DELETE FROM %s WHERE _id IN (SELECT _id FROM %s WHERE %s = ? ORDER BY _id LIMIT ?)",
+                DbParams.TABLE_EVENTS, DbParams.TABLE_EVENTS, DbParams.KEY_PRIORITY));
+        mCleanupStatement = mDatabase.compileStatement(String.format("DELETE FROM %s WHERE _id <= ?", DbParams.TABLE_EVENTS));
+        mCountStatement = mDatabase.compileStatement(String.format("SELECT COUNT(*) FROM %s", DbParams.TABLE_EVENTS));
+        mInsertPropertySetStatement = mDatabase.compileStatement(String.format("INSERT OR IGNORE INTO %s (%s, %s) VALUES (?, ?)",
+                DbParams.TABLE_PROPERTY_SETS, DbParams.KEY_HASH, DbParams.KEY_DATA));
+        mQueryPropertySetStatement = mDatabase.compileStatement(String.format("SELECT %s FROM %s WHERE %s = ?",
+                DbParams.KEY_DATA, DbParams.TABLE_PROPERTY_SETS, DbParams.KEY_HASH));
+        mCount = (int) mCountStatement.simpleQueryForLong();
+        BzLog.i(TAG, "Open events database directly, count: " + mCount);
+    }
+
+    /**
+     * 插入一条数据
+     *
+     * @param data 事件 JSON 的 UTF-8 字节
+     * @param priority 淘汰时的优先级
+     * @param createdAt 创建时间
+     * @return Event 表的数据条数
+     */
+    synchronized int insert(byte[] data, int priority, long createdAt) {
+        if (executeInsert(data, priority, createdAt)) {
+            mCount++;
+        }
+        return mCount;
+    }
+
+    /**
+     * 在一个事务中插入多条数据
+     *
+     * @param dataList 事件 JSON 的 UTF-8 字节
+     * @param priorities 每条数据淘汰时的优先级
+     * @param createdAt 创建时间
+     * @return Event 表的数据条数
+     */
+    synchronized int insert(List<byte[]> dataList, int[] priorities, long createdAt) {
+        int inserted = 0;
+        mDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < dataList.size(); i++) {
+                if (executeInsert(dataList.get(i), priorities[i], createdAt)) {
+                    inserted++;
+                }
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        mCount += inserted;
+        return mCount;
+    }
+
+    private boolean executeInsert(byte[] data, int priority, long createdAt) {
+        mInsertStatement.bindBlob(1, data);
+        mInsertStatement.bindLong(2, createdAt);
+        mInsertStatement.bindLong(3, EventRecords.checksum(data));
+        mInsertStatement.bindLong(4, priority);
+        String hash = PropertySets.hashOf(data);
+        if (hash == null) {
+            mInsertStatement.bindNull(5);
+        } else {
+            mInsertStatement.bindString(5, hash);
+        }
+        return mInsertStatement.executeInsert() != -1;
+    }
+
+    /**
+     * 删除 _id &lt;= lastId 的数据
+     *
+     * @param lastId 最后一条数据的 _id
+     * @return Event 表的数据条数
+     */
+    synchronized int cleanup(String lastId) {
+        mCleanupStatement.bindString(1, lastId);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            mCount = Math.max(0, mCount - mCleanupStatement.executeUpdateDelete());
+        } else {
+            // execute 不返回删除的条数，重新计数
+            mCleanupStatement.execute();
+            mCount = (int) mCountStatement.simpleQueryForLong();
+        }
+        return mCount;
+    }
+
+    /**
+     * 按 _id 升序删除指定优先级的数据
+     *
+     * @param priority 优先级
+     * @param limit 条数限制
+     * @return 删除的条数
+     */
+    synchronized int evict(int priority, int limit) {
+        mEvictStatement.bindLong(1, priority);
+        mEvictStatement.bindLong(2, limit);
+        int deleted;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            deleted = mEvictStatement.executeUpdateDelete();
+        } else {
+            mEvictStatement.execute();
+            int count = (int) mCountStatement.simpleQueryForLong();
+            deleted = mCount - count;
+        }
+        mCount = Math.max(0, mCount - deleted);
+        return deleted;
+    }
+
+    /**
+     * 获取数据库有效数据占用的字节数
+     *
+     * @return 字节数
+     */
+    synchronized long databaseSize() {
+        return BaizeDataContentProvider.getDatabaseSize(mDatabase);
+    }
+
+    /**
+     * 获取 Event 表的数据条数
+     *
+     * @return 数据条数
+     */
+    synchronized int count() {
+        return mCount;
+    }
+
+    /**
+     * 从老数据库迁移一批数据
+     *
+     * @param migrator 老数据库迁移
+     * @return 是否还有未迁移的数据
+     */
+    synchronized boolean migrateLegacyEvents(LegacyEventsMigrator migrator) {
+        mCount += migrator.migrate(mDatabase, LegacyEventsMigrator.CHUNK_SIZE);
+        return !migrator.isFinished();
+    }
+
+    /**
+     * 删除所有数据
+     */
+    synchronized void deleteAll() {
+        mDatabase.delete(DbParams.TABLE_EVENTS, null, null);
+        mCount = 0;
+    }
+
+    /**
+     * 按 _id 升序读取 _id &gt; afterId 的数据，只读取 _id、data、crc
+     *
+     * @param afterId 上一页最后一条数据的 _id，为 null 时从头读取
+     * @param limit 条数限制
+     * @return Cursor
+     */
+    Cursor query(String afterId, int limit) {
+        return mDatabase.query(DbParams.TABLE_EVENTS, DbAdapter.EVENTS_PROJECTION,
+                afterId == null ? null : "_id > ?", afterId == null ? null : new String[]{afterId},
+                null, null, "_id ASC LIMIT " + limit);
+    }
+
+    /**
+     * 保存属性集合，已存在时忽略
+     *
+     * @param hash 内容哈希
+     * @param data 属性集合
+     */
+    synchronized void insertPropertySet(String hash, String data) {
+        mInsertPropertySetStatement.bindString(1, hash);
+        mInsertPropertySetStatement.bindString(2, data);
+        mInsertPropertySetStatement.executeInsert();
+    }
+
+    /**
+     * 读取属性集合
+     *
+     * @param hash 内容哈希
+     * @return 属性集合，不存在时返回 null
+     */
+    synchronized String queryPropertySet(String hash) {
+        mQueryPropertySetStatement.bindString(1, hash);
+        try {
+            return mQueryPropertySetStatement.simpleQueryForString();
+        } catch (SQLiteDoneException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 删除没有事件引用的属性集合
+     */
+    synchronized void prunePropertySets() {
+        mDatabase.delete(DbParams.TABLE_PROPERTY_SETS, DbParams.UNREFERENCED_PROPERTY_SETS, null);
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Created by bkb on 2020/06/11.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import android.content.Context;
+
+import com.baize.analytics.android.sdk.BzLog;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * 只追加写的文件事件存储。
+ * 事件按行写入分段文件，每行格式为 "id\t事件 JSON\t校验值"，单个分段超过 MAX_SEGMENT_SIZE 后写入新的分段；
+ * 已上报的最大 id 记录在 ack 文件中，分段内的事件全部上报后删除整个分段。
+ */
+public class FileEventStore implements EventStore {
+    private static final String TAG = "SA.FileEventStore";
+    private static final String DIRECTORY_NAME = "baize_events";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String ACK_FILE_NAME = "ack";
+    private static final String CHARSET = "UTF-8";
+    private static final long MAX_SEGMENT_SIZE = 256 * 1024;
+    private final File mDirectory;
+    private final long mMaxCacheSize;
+    private final LinkedList<Segment> mSegments = new LinkedList<>();
+    /* 正在写入的分段 */
+    private FileOutputStream mOutput;
+    /* 已上报的最大 id */
+    private long mAckedId = 0;
+    private long mNextId = 1;
+
+    /**
+     * @param context Context
+     * @param maxCacheSize 最大占用空间，超过后删除最早的分段
+     */
+    public FileEventStore(Context context, long maxCacheSize) {
+        mDirectory = new File(context.getFilesDir(), DIRECTORY_NAME);
+        mMaxCacheSize = maxCacheSize;
+        load();
+    }
+
+    private void load() {
+        try {
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                BzLog.i(TAG, "Can not create directory: " + mDirectory);
+                return;
+            }
+            mAckedId = readAckedId();
+            long maxId = mAckedId;
+            File[] files = mDirectory.listFiles();
+            if (files != null) {
+                List<Segment> segments = new ArrayList<>();
+                for (File file : files) {
+                    String name = file.getName();
+                    if (name.endsWith(SEGMENT_SUFFIX)) {
+                        try {
+                            long firstId = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                            segments.add(new Segment(file, firstId));
+                        } catch (NumberFormatException e) {
+                            BzLog.printStackTrace(e);
+                        }
+                    }
+                }
+                Segment[] sorted = segments.toArray(new Segment[0]);
+                Arrays.sort(sorted, new Comparator<Segment>() {
+                    @Override
+                    public int compare(Segment o1, Segment o2) {
+                        return o1.firstId < o2.firstId ? -1 : (o1.firstId == o2.firstId ? 0 : 1);
+                    }
+                });
+                for (Segment segment : sorted) {
+                    segment.lastId = scanLastId(segment);
+                    segment.bytes = segment.file.length();
+                    if (segment.lastId <= mAckedId) {
+                        deleteFile(segment.file);
+                    } else {
+                        mSegments.add(segment);
+                        maxId = Math.max(maxId, segment.lastId);
+                    }
+                }
+            }
+            mNextId = maxId + 1;
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+    }
+
+    @Override
+    public synchronized int append(JSONObject event) {
+        try {
+            if (!ensureCapacity()) {
+                return DbParams.DB_OUT_OF_MEMORY_ERROR;
+            }
+            writeRecord(EventRecords.encode(event));
+            mOutput.flush();
+            return count();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+            return DbParams.DB_UPDATE_ERROR;
+        }
+    }
+
+    @Override
+    public synchronized int append(List<JSONObject> events) {
+        try {
+            if (!ensureCapacity()) {
+                return DbParams.DB_OUT_OF_MEMORY_ERROR;
+            }
+            for (JSONObject event : events) {
+                writeRecord(EventRecords.encode(event));
+            }
+            if (mOutput != null) {
+                mOutput.flush();
+            }
+            return count();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+            return DbParams.DB_UPDATE_ERROR;
+        }
+    }
+
+    /**
+     * 超过最大占用空间时删除最早的分段
+     *
+     * @return 是否还能写入
+     */
+    private boolean ensureCapacity() {
+        while (sizeInBytes() >= mMaxCacheSize) {
+            if (mSegments.size() <= 1) {
+                return false;
+            }
+            BzLog.i(TAG, "There is not enough space left on the device to store events, so will delete the oldest segment");
+            Segment oldest = mSegments.removeFirst();
+            deleteFile(oldest.file);
+            mAckedId = Math.max(mAckedId, oldest.lastId);
+            writeAckedId();
+        }
+        return true;
+    }
+
+    private void writeRecord(String record) throws IOException {
+        Segment tail = mSegments.isEmpty() ? null : mSegments.getLast();
+        if (mOutput == null || tail == null || tail.bytes >= MAX_SEGMENT_SIZE) {
+            closeOutput();
+            tail = new Segment(new File(mDirectory, mNextId + SEGMENT_SUFFIX), mNextId);
+            mOutput = new FileOutputStream(tail.file, true);
+            mSegments.add(tail);
+        }
+        byte[] bytes = (mNextId + "\t" + record + "\n").getBytes(CHARSET);
+        mOutput.write(bytes);
+        tail.bytes += bytes.length;
+        tail.lastId = mNextId;
+        mNextId++;
+    }
+
+    @Override
+    public EventBatch peek(int limit, long maxBytes) {
+        return peek(null, limit, maxBytes);
+    }
+
+    @Override
+    public synchronized EventBatch peek(String afterId, int limit, long maxBytes) {
+        EventBatch batch = new EventBatch(System.currentTimeMillis());
+        long after = mAckedId;
+        if (afterId != null) {
+            after = Math.max(after, Long.parseLong(afterId));
+        }
+        long lastId = -1;
+        int count = 0;
+        for (Segment segment : mSegments) {
+            if (count >= limit || batch.isFull(maxBytes)) {
+                break;
+            }
+            if (segment.lastId <= after) {
+                continue;
+            }
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(segment.file), CHARSET));
+                String line;
+                while (count < limit && (line = reader.readLine()) != null) {
+                    int index = line.indexOf('\t');
+                    long id;
+                    try {
+                        id = Long.parseLong(line.substring(0, index));
+                    } catch (Exception e) {
+                        // 写入中断的行
+                        continue;
+                    }
+                    if (id <= after) {
+                        continue;
+                    }
+                    lastId = id;
+                    count++;
+                    batch.appendRecord(line.substring(index + 1));
+                    if (batch.isFull(maxBytes)) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                BzLog.printStackTrace(e);
+            } finally {
+                closeQuietly(reader);
+            }
+        }
+        if (lastId < 0) {
+            return null;
+        }
+        batch.setLastId(String.valueOf(lastId));
+        return batch;
+    }
+
+    @Override
+    public synchronized int ack(String lastId) {
+        try {
+            long id = Long.parseLong(lastId);
+            if (id > mAckedId) {
+                mAckedId = id;
+                writeAckedId();
+            }
+            while (!mSegments.isEmpty() && mSegments.getFirst().lastId <= mAckedId) {
+                Segment segment = mSegments.removeFirst();
+                if (mSegments.isEmpty()) {
+                    closeOutput();
+                }
+                deleteFile(segment.file);
+            }
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+        return count();
+    }
+
+    @Override
+    public synchronized void clear() {
+        closeOutput();
+        for (Segment segment : mSegments) {
+            deleteFile(segment.file);
+        }
+        mSegments.clear();
+        mAckedId = mNextId - 1;
+        writeAckedId();
+    }
+
+    /**
+     * id 连续分配，未上报的条数为最后写入的 id 与已上报的最大 id 之差
+     */
+    @Override
+    public synchronized int count() {
+        return (int) Math.max(0, mNextId - 1 - mAckedId);
+    }
+
+    @Override
+    public synchronized long sizeInBytes() {
+        long size = 0;
+        for (Segment segment : mSegments) {
+            size += segment.bytes;
+        }
+        return size;
+    }
+
+    private long scanLastId(Segment segment) {
+        long lastId = segment.firstId - 1;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(segment.file), CHARSET));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int index = line.indexOf('\t');
+                if (index > 0) {
+                    try {
+                        lastId = Math.max(lastId, Long.parseLong(line.substring(0, index)));
+                    } catch (NumberFormatException e) {
+                        // 写入中断的行
+                    }
+                }
+            }
+        } catch (IOException e) {
+            BzLog.printStackTrace(e);
+        } finally {
+            closeQuietly(reader);
+        }
+        return lastId;
+    }
+
+    private long readAckedId() {
+        File ackFile = new File(mDirectory, ACK_FILE_NAME);
+        if (!ackFile.exists()) {
+            return 0;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(ackFile), CHARSET));
+            String line = reader.readLine();
+            return line == null ? 0 : Long.parseLong(line.trim());
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+            return 0;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * 先写临时文件再重命名，避免写入中断导致 ack 文件损坏
+     */
+    private void writeAckedId() {
+        File tmpFile = new File(mDirectory, ACK_FILE_NAME + ".tmp");
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(tmpFile);
+            output.write(String.valueOf(mAckedId).getBytes(CHARSET));
+            output.getFD().sync();
+            output.close();
+            output = null;
+            if (!tmpFile.renameTo(new File(mDirectory, ACK_FILE_NAME))) {
+                BzLog.i(TAG, "Can not write ack file");
+            }
+        } catch (IOException e) {
+            BzLog.printStackTrace(e);
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    private void closeOutput() {
+        closeQuietly(mOutput);
+        mOutput = null;
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            BzLog.i(TAG, "Can not delete file: " + file);
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static class Segment {
+        final File file;
+        final long firstId;
+        long lastId;
+        long bytes;
+
+        Segment(File file, long firstId) {
+            this.file = file;
+            this.firstId = firstId;
+            this.lastId = firstId - 1;
+        }
+    }
+}
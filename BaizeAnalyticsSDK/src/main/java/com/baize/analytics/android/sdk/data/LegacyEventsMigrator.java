@@ -0,0 +1,148 @@
+/*
+ * Created by bkb on 2020/06/17.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.baize.analytics.android.sdk.BzLog;
+
+/**
+ * 把老版本数据库（以包名命名）中的事件迁移到 Event 表。
+ * 每次按 _id 升序迁移一批，插入和迁移进度在 Event 表所在数据库的同一个事务中提交，进程被杀后从上次的进度继续，不会重复迁移；
+ * 全部迁移后删除老数据库。由存储线程分批调用，不阻塞 ContentProvider 的创建。
+ */
+class LegacyEventsMigrator {
+    private static final String TAG = "SA.LegacyEventsMigrator";
+    /* 每批迁移的条数 */
+    static final int CHUNK_SIZE = 200;
+    private static final String CREATE_PROGRESS_TABLE =
+            String.format("CREATE TABLE IF NOT EXISTS %s (_id INTEGER PRIMARY KEY, %s INTEGER NOT NULL);",
+                    DbParams.TABLE_LEGACY_MIGRATION, DbParams.KEY_LAST_ID);
+    private final Context mContext;
+    private final String mDatabaseName;
+    private OldBDatabaseHelper mOldDatabaseHelper;
+    private boolean mFinished = false;
+
+    /**
+     * @param context Context
+     * @param databaseName 老数据库的名称，即应用的包名
+     */
+    LegacyEventsMigrator(Context context, String databaseName) {
+        mContext = context;
+        mDatabaseName = databaseName;
+    }
+
+    /**
+     * 是否已迁移完成，老数据库不存在时直接返回 true
+     */
+    synchronized boolean isFinished() {
+        if (!mFinished && !mContext.getDatabasePath(mDatabaseName).exists()) {
+            mFinished = true;
+        }
+        return mFinished;
+    }
+
+    /**
+     * 迁移一批数据
+     *
+     * @param target Event 表所在的数据库
+     * @param limit 条数限制
+     * @return 迁移的条数
+     */
+    synchronized int migrate(SQLiteDatabase target, int limit) {
+        if (isFinished()) {
+            return 0;
+        }
+        int migrated = 0;
+        boolean exhausted = false;
+        Cursor cursor = null;
+        target.beginTransaction();
+        try {
+            target.execSQL(CREATE_PROGRESS_TABLE);
+            long lastId = readProgress(target);
+            try {
+                if (mOldDatabaseHelper == null) {
+                    mOldDatabaseHelper = new OldBDatabaseHelper(mContext, mDatabaseName);
+                }
+                cursor = mOldDatabaseHelper.queryEvents(lastId, limit);
+            } catch (Exception e) {
+                // 老数据库无法读取，数据已无法恢复，直接删除
+                BzLog.printStackTrace(e);
+            }
+            final ContentValues cv = new ContentValues();
+            int read = 0;
+            while (cursor != null && cursor.moveToNext()) {
+                read++;
+                lastId = cursor.getLong(0);
+                cv.put(DbParams.KEY_DATA, cursor.getString(1));
+                cv.put(DbParams.KEY_CREATED_AT, cursor.getString(2));
+                if (target.insert(DbParams.TABLE_EVENTS, "_id", cv) != -1) {
+                    migrated++;
+                }
+            }
+            exhausted = cursor == null || read < limit;
+            final ContentValues progress = new ContentValues();
+            progress.put("_id", 1);
+            progress.put(DbParams.KEY_LAST_ID, lastId);
+            target.replace(DbParams.TABLE_LEGACY_MIGRATION, null, progress);
+            target.setTransactionSuccessful();
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            target.endTransaction();
+        }
+        BzLog.i(TAG, "Migrated " + migrated + " events from the old database");
+        if (exhausted) {
+            deleteOldDatabase(target);
+        }
+        return migrated;
+    }
+
+    private long readProgress(SQLiteDatabase target) {
+        Cursor cursor = null;
+        try {
+            cursor = target.rawQuery(String.format("SELECT %s FROM %s WHERE _id = 1", DbParams.KEY_LAST_ID, DbParams.TABLE_LEGACY_MIGRATION), null);
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * 删除老数据库后再删除进度，中途进程被杀时老数据库已不存在，残留的进度表不影响使用
+     */
+    private void deleteOldDatabase(SQLiteDatabase target) {
+        try {
+            if (mOldDatabaseHelper != null) {
+                mOldDatabaseHelper.close();
+                mOldDatabaseHelper = null;
+            }
+            mContext.deleteDatabase(mDatabaseName);
+            mFinished = true;
+            target.execSQL(String.format("DROP TABLE IF EXISTS %s", DbParams.TABLE_LEGACY_MIGRATION));
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+    }
+}
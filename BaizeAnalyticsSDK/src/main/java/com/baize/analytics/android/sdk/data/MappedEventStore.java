@@ -0,0 +1,512 @@
+/*
+ * Created by bkb on 2020/06/12.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import android.content.Context;
+
+import com.baize.analytics.android.sdk.BzLog;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 基于内存映射分段文件的事件队列。
+ * 每个分段是固定大小的文件，事件按 [长度][CRC32][事件 JSON] 的格式顺序写入，CRC32 包含分段序号，
+ * 复用的分段文件中残留的旧记录不会通过校验；读取位置（分段序号、偏移）和下一个分段序号保存在 cursor 文件中，
+ * 分段序号只增不减，清空后也不会重复使用；
+ * 读取位置之前的分段全部确认后回收复用；异常退出后通过校验从头扫描分段，找到写入位置。
+ */
+public class MappedEventStore implements EventStore {
+    private static final String TAG = "SA.MappedEventStore";
+    private static final String DIRECTORY_NAME = "baize_mapped_events";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String FREE_SUFFIX = ".free";
+    private static final String CURSOR_FILE_NAME = "cursor";
+    private static final String CHARSET = "UTF-8";
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+    /* 长度 + CRC32 */
+    private static final int HEADER_SIZE = 8;
+    /* 保留的空闲分段文件数 */
+    private static final int MAX_FREE_SEGMENTS = 2;
+    private final File mDirectory;
+    private final long mMaxCacheSize;
+    private final LinkedList<Segment> mSegments = new LinkedList<>();
+    private final LinkedList<File> mFreeFiles = new LinkedList<>();
+    private final CRC32 mCrc32 = new CRC32();
+    /* 读取位置 */
+    private long mCursorSegment;
+    private int mCursorOffset;
+    private long mNextSegment = 1;
+    private int mCount;
+
+    /**
+     * @param context Context
+     * @param maxCacheSize 最大占用空间，超过后删除最早的分段
+     */
+    public MappedEventStore(Context context, long maxCacheSize) {
+        mDirectory = new File(context.getFilesDir(), DIRECTORY_NAME);
+        mMaxCacheSize = Math.max(2L * SEGMENT_SIZE, maxCacheSize);
+        load();
+    }
+
+    private void load() {
+        try {
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                BzLog.i(TAG, "Can not create directory: " + mDirectory);
+                return;
+            }
+            readCursor();
+            List<Segment> segments = new ArrayList<>();
+            File[] files = mDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    if (name.endsWith(FREE_SUFFIX)) {
+                        mFreeFiles.add(file);
+                    } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                        try {
+                            long number = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                            segments.add(new Segment(file, number));
+                        } catch (NumberFormatException e) {
+                            BzLog.printStackTrace(e);
+                        }
+                    }
+                }
+            }
+            Segment[] sorted = segments.toArray(new Segment[0]);
+            Arrays.sort(sorted, new Comparator<Segment>() {
+                @Override
+                public int compare(Segment o1, Segment o2) {
+                    return o1.number < o2.number ? -1 : (o1.number == o2.number ? 0 : 1);
+                }
+            });
+            for (Segment segment : sorted) {
+                if (segment.number < mCursorSegment) {
+                    recycle(segment.file);
+                    continue;
+                }
+                segment.map();
+                // 扫描有效记录，确定写入位置
+                int offset = 0;
+                int next;
+                while ((next = nextRecord(segment, offset)) > 0) {
+                    if (segment.number > mCursorSegment || offset >= mCursorOffset) {
+                        mCount++;
+                    }
+                    offset = next;
+                }
+                segment.writeOffset = offset;
+                mSegments.add(segment);
+                mNextSegment = Math.max(mNextSegment, segment.number + 1);
+            }
+            if (mSegments.isEmpty() || mSegments.getFirst().number > mCursorSegment) {
+                mCursorSegment = mSegments.isEmpty() ? mNextSegment : mSegments.getFirst().number;
+                mCursorOffset = 0;
+            }
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+    }
+
+    @Override
+    public synchronized int append(JSONObject event) {
+        try {
+            byte[] data = EventRecords.serialize(event);
+            if (isTooLarge(data)) {
+                return DbParams.DB_UPDATE_ERROR;
+            }
+            return writeRecord(data) ? mCount : DbParams.DB_OUT_OF_MEMORY_ERROR;
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+            return DbParams.DB_UPDATE_ERROR;
+        }
+    }
+
+    @Override
+    public synchronized int append(List<JSONObject> events) {
+        try {
+            for (JSONObject event : events) {
+                byte[] data = EventRecords.serialize(event);
+                if (isTooLarge(data)) {
+                    return DbParams.DB_UPDATE_ERROR;
+                }
+                if (!writeRecord(data)) {
+                    return DbParams.DB_OUT_OF_MEMORY_ERROR;
+                }
+            }
+            return mCount;
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+            return DbParams.DB_UPDATE_ERROR;
+        }
+    }
+
+    /**
+     * 超过一个分段大小的事件无法存储
+     */
+    private static boolean isTooLarge(byte[] data) {
+        if (HEADER_SIZE + data.length > SEGMENT_SIZE) {
+            BzLog.i(TAG, "The event is too large to store: " + data.length);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean writeRecord(byte[] data) throws IOException {
+        Segment tail = mSegments.isEmpty() ? null : mSegments.getLast();
+        if (tail == null || tail.writeOffset + HEADER_SIZE + data.length > SEGMENT_SIZE) {
+            if (tail != null) {
+                tail.buffer.force();
+            }
+            if (!ensureCapacity()) {
+                return false;
+            }
+            tail = newSegment();
+        }
+        ByteBuffer buffer = tail.buffer.duplicate();
+        buffer.position(tail.writeOffset + HEADER_SIZE);
+        buffer.put(data);
+        // 最后写入长度，写入中断的记录不会通过校验
+        buffer.putInt(tail.writeOffset + 4, checksum(tail.number, data, 0, data.length));
+        buffer.putInt(tail.writeOffset, data.length);
+        tail.writeOffset += HEADER_SIZE + data.length;
+        mCount++;
+        return true;
+    }
+
+    /**
+     * 写入新的分段前，超过最大占用空间时删除最早的分段
+     *
+     * @return 是否还能写入
+     */
+    private boolean ensureCapacity() {
+        while ((mSegments.size() + 1L) * SEGMENT_SIZE > mMaxCacheSize) {
+            if (mSegments.size() <= 1) {
+                return false;
+            }
+            BzLog.i(TAG, "There is not enough space left on the device to store events, so will delete the oldest segment");
+            Segment oldest = mSegments.removeFirst();
+            mCount -= countRecords(oldest, oldest.number == mCursorSegment ? mCursorOffset : 0, SEGMENT_SIZE);
+            oldest.unmap();
+            recycle(oldest.file);
+            mCursorSegment = mSegments.getFirst().number;
+            mCursorOffset = 0;
+            writeCursor();
+        }
+        return true;
+    }
+
+    private Segment newSegment() throws IOException {
+        long number = mNextSegment++;
+        // 先保存下一个分段序号，重启后不会再使用该序号
+        writeCursor();
+        File file = new File(mDirectory, number + SEGMENT_SUFFIX);
+        File freeFile = mFreeFiles.poll();
+        if (freeFile != null && !freeFile.renameTo(file)) {
+            deleteFile(freeFile);
+        }
+        Segment segment = new Segment(file, number);
+        segment.map();
+        segment.writeOffset = 0;
+        mSegments.add(segment);
+        return segment;
+    }
+
+    @Override
+    public EventBatch peek(int limit, long maxBytes) {
+        return peek(null, limit, maxBytes);
+    }
+
+    @Override
+    public synchronized EventBatch peek(String afterId, int limit, long maxBytes) {
+        EventBatch batch = new EventBatch(System.currentTimeMillis());
+        String lastId = null;
+        int count = 0;
+        long startSegment = mCursorSegment;
+        int offset = mCursorOffset;
+        try {
+            if (afterId != null) {
+                int index = afterId.indexOf(':');
+                long segmentNumber = Long.parseLong(afterId.substring(0, index));
+                int segmentOffset = Integer.parseInt(afterId.substring(index + 1));
+                if (segmentNumber > startSegment || (segmentNumber == startSegment && segmentOffset > offset)) {
+                    startSegment = segmentNumber;
+                    offset = segmentOffset;
+                }
+            }
+            for (Segment segment : mSegments) {
+                if (segment.number < startSegment) {
+                    continue;
+                }
+                if (segment.number > startSegment) {
+                    offset = 0;
+                }
+                int next;
+                while (count < limit && !batch.isFull(maxBytes)
+                        && (next = nextRecord(segment, offset)) > 0) {
+                    byte[] data = new byte[next - offset - HEADER_SIZE];
+                    ByteBuffer buffer = segment.buffer.duplicate();
+                    buffer.position(offset + HEADER_SIZE);
+                    buffer.get(data);
+                    batch.append(data);
+                    offset = next;
+                    lastId = segment.number + ":" + offset;
+                    count++;
+                }
+                if (count >= limit || batch.isFull(maxBytes)) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+        if (lastId == null) {
+            return null;
+        }
+        batch.setLastId(lastId);
+        return batch;
+    }
+
+    @Override
+    public synchronized int ack(String lastId) {
+        try {
+            int index = lastId.indexOf(':');
+            long segmentNumber = Long.parseLong(lastId.substring(0, index));
+            int offset = Integer.parseInt(lastId.substring(index + 1));
+            if (segmentNumber < mCursorSegment || (segmentNumber == mCursorSegment && offset <= mCursorOffset)) {
+                return mCount;
+            }
+            while (!mSegments.isEmpty()) {
+                Segment head = mSegments.getFirst();
+                int start = head.number == mCursorSegment ? mCursorOffset : 0;
+                if (head.number < segmentNumber) {
+                    mCount -= countRecords(head, start, SEGMENT_SIZE);
+                    // 整个分段已确认，回收复用
+                    mSegments.removeFirst();
+                    head.unmap();
+                    recycle(head.file);
+                } else {
+                    if (head.number == segmentNumber) {
+                        mCount -= countRecords(head, start, offset);
+                    }
+                    break;
+                }
+            }
+            mCursorSegment = segmentNumber;
+            mCursorOffset = offset;
+            writeCursor();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+        return mCount;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (Segment segment : mSegments) {
+            segment.unmap();
+            recycle(segment.file);
+        }
+        mSegments.clear();
+        mCount = 0;
+        mCursorSegment = mNextSegment;
+        mCursorOffset = 0;
+        writeCursor();
+    }
+
+    @Override
+    public synchronized int count() {
+        return mCount;
+    }
+
+    @Override
+    public synchronized long sizeInBytes() {
+        return (long) mSegments.size() * SEGMENT_SIZE;
+    }
+
+    /**
+     * 校验 offset 处的记录
+     *
+     * @return 下一条记录的偏移，记录无效时返回 -1
+     */
+    private int nextRecord(Segment segment, int offset) {
+        if (offset + HEADER_SIZE > SEGMENT_SIZE) {
+            return -1;
+        }
+        if (segment.writeOffset >= 0 && offset >= segment.writeOffset) {
+            return -1;
+        }
+        int length = segment.buffer.getInt(offset);
+        if (length <= 0 || offset + HEADER_SIZE + length > SEGMENT_SIZE) {
+            return -1;
+        }
+        if (segment.writeOffset < 0) {
+            // 恢复时才需要校验，运行中写入位置之前的记录都有效
+            byte[] data = new byte[length];
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset + HEADER_SIZE);
+            buffer.get(data);
+            if (segment.buffer.getInt(offset + 4) != checksum(segment.number, data, 0, length)) {
+                return -1;
+            }
+        }
+        return offset + HEADER_SIZE + length;
+    }
+
+    /**
+     * 统计 [start, end) 区间内的记录条数，只读取长度
+     */
+    private int countRecords(Segment segment, int start, int end) {
+        int count = 0;
+        int offset = start;
+        int next;
+        while (offset < end && (next = nextRecord(segment, offset)) > 0) {
+            count++;
+            offset = next;
+        }
+        return count;
+    }
+
+    private int checksum(long segmentNumber, byte[] data, int offset, int length) {
+        mCrc32.reset();
+        for (int i = 0; i < 8; i++) {
+            mCrc32.update((int) (segmentNumber >>> (i * 8)));
+        }
+        mCrc32.update(data, offset, length);
+        return (int) mCrc32.getValue();
+    }
+
+    /**
+     * 保留少量空闲分段文件供新分段复用，避免重复分配文件空间
+     */
+    private void recycle(File file) {
+        if (mFreeFiles.size() < MAX_FREE_SEGMENTS) {
+            File freeFile = new File(mDirectory, file.getName() + FREE_SUFFIX);
+            if (file.renameTo(freeFile)) {
+                mFreeFiles.add(freeFile);
+                return;
+            }
+        }
+        deleteFile(file);
+    }
+
+    private void readCursor() {
+        File cursorFile = new File(mDirectory, CURSOR_FILE_NAME);
+        if (!cursorFile.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(cursorFile), CHARSET));
+            String line = reader.readLine();
+            if (line != null) {
+                // 分段序号:偏移:下一个分段序号，旧版本没有下一个分段序号
+                String[] fields = line.trim().split(":");
+                mCursorSegment = Long.parseLong(fields[0]);
+                mCursorOffset = Integer.parseInt(fields[1]);
+                mNextSegment = Math.max(mCursorSegment, fields.length > 2 ? Long.parseLong(fields[2]) : 1);
+            }
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * 先写临时文件再重命名，避免写入中断导致 cursor 文件损坏
+     */
+    private void writeCursor() {
+        File tmpFile = new File(mDirectory, CURSOR_FILE_NAME + ".tmp");
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(tmpFile);
+            output.write((mCursorSegment + ":" + mCursorOffset + ":" + mNextSegment).getBytes(CHARSET));
+            output.close();
+            output = null;
+            if (!tmpFile.renameTo(new File(mDirectory, CURSOR_FILE_NAME))) {
+                BzLog.i(TAG, "Can not write cursor file");
+            }
+        } catch (IOException e) {
+            BzLog.printStackTrace(e);
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            BzLog.i(TAG, "Can not delete file: " + file);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static class Segment {
+        final File file;
+        final long number;
+        MappedByteBuffer buffer;
+        /* 写入位置，恢复扫描时为 -1 */
+        int writeOffset = -1;
+
+        Segment(File file, long number) {
+            this.file = file;
+            this.number = number;
+        }
+
+        void map() throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(SEGMENT_SIZE);
+                buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+
+        void unmap() {
+            // MappedByteBuffer 没有公开的 unmap 方法，释放引用后由 GC 回收映射
+            buffer = null;
+        }
+    }
+}
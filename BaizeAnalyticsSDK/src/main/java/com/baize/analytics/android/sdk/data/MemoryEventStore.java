@@ -0,0 +1,116 @@
+/*
+ * Created by bkb on 2020/06/11.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 纯内存的事件存储，进程退出后数据丢失，用于测试和存储性能对比
+ */
+public class MemoryEventStore implements EventStore {
+    private final ArrayDeque<Record> mRecords = new ArrayDeque<>();
+    private long mNextId = 1;
+    private long mSizeInBytes = 0;
+
+    @Override
+    public synchronized int append(JSONObject event) {
+        addRecord(EventRecords.serialize(event));
+        return mRecords.size();
+    }
+
+    @Override
+    public synchronized int append(List<JSONObject> events) {
+        for (JSONObject event : events) {
+            addRecord(EventRecords.serialize(event));
+        }
+        return mRecords.size();
+    }
+
+    private void addRecord(byte[] data) {
+        mRecords.addLast(new Record(mNextId++, data));
+        mSizeInBytes += data.length;
+    }
+
+    @Override
+    public EventBatch peek(int limit, long maxBytes) {
+        return peek(null, limit, maxBytes);
+    }
+
+    @Override
+    public synchronized EventBatch peek(String afterId, int limit, long maxBytes) {
+        if (mRecords.isEmpty()) {
+            return null;
+        }
+        long after = afterId == null ? 0 : Long.parseLong(afterId);
+        EventBatch batch = new EventBatch(System.currentTimeMillis());
+        int count = 0;
+        Iterator<Record> iterator = mRecords.iterator();
+        while (iterator.hasNext() && count < limit) {
+            Record record = iterator.next();
+            if (record.id <= after) {
+                continue;
+            }
+            batch.setLastId(String.valueOf(record.id));
+            count++;
+            batch.append(record.data);
+            if (batch.isFull(maxBytes)) {
+                break;
+            }
+        }
+        return count > 0 ? batch : null;
+    }
+
+    @Override
+    public synchronized int ack(String lastId) {
+        long id = Long.parseLong(lastId);
+        while (!mRecords.isEmpty() && mRecords.peekFirst().id <= id) {
+            mSizeInBytes -= mRecords.pollFirst().data.length;
+        }
+        return mRecords.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        mRecords.clear();
+        mSizeInBytes = 0;
+    }
+
+    @Override
+    public synchronized int count() {
+        return mRecords.size();
+    }
+
+    @Override
+    public synchronized long sizeInBytes() {
+        return mSizeInBytes;
+    }
+
+    private static class Record {
+        final long id;
+        final byte[] data;
+
+        Record(long id, byte[] data) {
+            this.id = id;
+            this.data = data;
+        }
+    }
+}
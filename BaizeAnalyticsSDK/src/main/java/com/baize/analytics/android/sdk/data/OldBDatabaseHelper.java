@@ -22,11 +22,6 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
-import com.baize.analytics.android.sdk.BzLog;
-
-import org.json.JSONArray;
-import org.json.JSONObject;
-
 
 public class OldBDatabaseHelper extends SQLiteOpenHelper {
     OldBDatabaseHelper(Context context, String dbName) {
@@ -43,27 +38,15 @@ public class OldBDatabaseHelper extends SQLiteOpenHelper {
 
     }
 
-    JSONArray getAllEvents() {
-        final JSONArray arr = new JSONArray();
-        Cursor c = null;
-        try {
-            final SQLiteDatabase db = getReadableDatabase();
-            c = db.rawQuery(String.format("SELECT * FROM %s ORDER BY %s", DbParams.TABLE_EVENTS, DbParams.KEY_CREATED_AT), null);
-            while (c.moveToNext()) {
-                JSONObject jsonObject = new JSONObject();
-                jsonObject.put("created_at", c.getString(c.getColumnIndex("created_at")));
-                jsonObject.put("data", c.getString(c.getColumnIndex("data")));
-                arr.put(jsonObject);
-            }
-        } catch (Exception e) {
-            BzLog.printStackTrace(e);
-        } finally {
-            close();
-            if (c != null) {
-                c.close();
-            }
-        }
-
-        return arr;
+    /**
+     * 按 _id 升序读取 _id &gt; afterId 的数据，只读取 _id、data、created_at
+     *
+     * @param afterId 上一批最后一条数据的 _id
+     * @param limit 条数限制
+     * @return Cursor
+     */
+    Cursor queryEvents(long afterId, int limit) {
+        return getReadableDatabase().query(DbParams.TABLE_EVENTS, new String[]{"_id", DbParams.KEY_DATA, DbParams.KEY_CREATED_AT},
+                "_id > ?", new String[]{String.valueOf(afterId)}, null, null, "_id ASC LIMIT " + limit);
     }
 }
@@ -34,6 +34,8 @@ import com.baize.analytics.android.sdk.data.persistent.PersistentLoginId;
 import com.baize.analytics.android.sdk.data.persistent.PersistentRemoteSDKConfig;
 import com.baize.analytics.android.sdk.data.persistent.PersistentSessionIntervalTime;
 import com.baize.analytics.android.sdk.data.persistent.PersistentSuperProperties;
+import com.baize.analytics.android.sdk.data.persistent.PersistentTrackIdEpoch;
+import com.baize.analytics.android.sdk.data.persistent.PersistentTrackIdSequence;
 
 import java.util.concurrent.Future;
 
@@ -89,6 +91,10 @@ public class PersistentLoader {
                 return new PersistentRemoteSDKConfig(storedPreferences);
             case PersistentName.SUPER_PROPERTIES:
                 return new PersistentSuperProperties(storedPreferences);
+            case PersistentName.TRACK_ID_EPOCH:
+                return new PersistentTrackIdEpoch(storedPreferences);
+            case PersistentName.TRACK_ID_SEQUENCE:
+                return new PersistentTrackIdSequence(storedPreferences);
             default:
                 return null;
         }
@@ -107,5 +113,7 @@ public class PersistentLoader {
         String LOGIN_ID = "events_login_id";
         String REMOTE_CONFIG = "baize_sdk_configuration";
         String SUPER_PROPERTIES = "super_properties";
+        String TRACK_ID_EPOCH = "track_id_epoch";
+        String TRACK_ID_SEQUENCE = "track_id_sequence";
     }
 }
@@ -0,0 +1,343 @@
+/*
+ * Created by bkb on 2020/06/12.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data;
+
+import android.text.TextUtils;
+
+import com.baize.analytics.android.sdk.BzLog;
+
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 将事件中重复的公共属性（设备信息、公共属性等）提取为属性集合，按内容哈希单独存储，
+ * 事件中只保存其余属性和属性集合的哈希，上报时再合并回事件。
+ * 存储格式为 {"_ps":"哈希","properties":{其余属性},...}，上报时在 "properties":{ 之后按字节插入属性集合，不解析事件。
+ */
+class PropertySets {
+    /* 属性集合哈希在事件中的字段名，作为第一个字段写入，读取时按前缀判断 */
+    private static final String KEY_PROPERTY_SET = "_ps";
+    private static final String PROPERTY_SET_PREFIX = "{\"" + KEY_PROPERTY_SET + "\":";
+    private static final byte[] PROPERTY_SET_PREFIX_BYTES = PROPERTY_SET_PREFIX.getBytes(Charset.forName(EventRecords.CHARSET));
+    private static final String KEY_PROPERTIES = "properties";
+    private static final byte[] PROPERTIES_HEAD_BYTES = ("\"" + KEY_PROPERTIES + "\":{").getBytes(Charset.forName(EventRecords.CHARSET));
+    private static final int MAX_CACHED_SETS = 8;
+    /* MD5 十六进制字符串的长度 */
+    private static final int HASH_LENGTH = 32;
+    private final Storage mStorage;
+    /* 需要提取的属性名 */
+    private volatile Set<String> mSharedKeys = Collections.emptySet();
+    /* 最近写入的属性集合，内容相同时不再计算哈希 */
+    private String mLastData;
+    private String mLastHash;
+    /* 本进程已保存过的属性集合 */
+    private final Set<String> mSavedHashes = new HashSet<>();
+    /* 读取过的属性集合的 UTF-8 字节 */
+    private final Map<String, byte[]> mLoadedSets = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > MAX_CACHED_SETS;
+        }
+    };
+
+    /**
+     * 属性集合的存储
+     */
+    interface Storage {
+        /**
+         * 保存属性集合，已存在时忽略
+         */
+        void save(String hash, String data);
+
+        /**
+         * 读取属性集合，不存在时返回 null
+         */
+        String load(String hash);
+
+        /**
+         * 删除没有事件引用的属性集合
+         */
+        void prune();
+    }
+
+    PropertySets(Storage storage) {
+        mStorage = storage;
+    }
+
+    /**
+     * 设置需要提取的属性名
+     *
+     * @param keys 属性名
+     */
+    void setSharedKeys(Collection<String> keys) {
+        mSharedKeys = keys == null ? Collections.<String>emptySet() : new HashSet<>(keys);
+    }
+
+    /**
+     * 提取重复的属性后将事件序列化为 UTF-8 字节
+     *
+     * @param event 事件
+     * @return 字节数组
+     */
+    synchronized byte[] encode(JSONObject event) {
+        Set<String> sharedKeys = mSharedKeys;
+        JSONObject properties = event.optJSONObject(KEY_PROPERTIES);
+        if (sharedKeys.isEmpty() || properties == null) {
+            return EventRecords.serialize(event);
+        }
+        try {
+            JSONObject shared = new JSONObject();
+            JSONObject others = new JSONObject();
+            Iterator<String> iterator = properties.keys();
+            while (iterator.hasNext()) {
+                String key = iterator.next();
+                if (sharedKeys.contains(key)) {
+                    shared.put(key, properties.get(key));
+                } else {
+                    others.put(key, properties.get(key));
+                }
+            }
+            if (shared.length() == 0) {
+                return EventRecords.serialize(event);
+            }
+            String hash = save(shared.toString());
+            if (hash == null) {
+                return EventRecords.serialize(event);
+            }
+            // properties 紧跟在 _ps 之后，上报时按固定位置插入属性集合
+            JSONObject delta = new JSONObject();
+            delta.put(KEY_PROPERTY_SET, hash);
+            delta.put(KEY_PROPERTIES, others);
+            iterator = event.keys();
+            while (iterator.hasNext()) {
+                String key = iterator.next();
+                if (!KEY_PROPERTIES.equals(key)) {
+                    delta.put(key, event.get(key));
+                }
+            }
+            return EventRecords.serialize(delta);
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+            return EventRecords.serialize(event);
+        }
+    }
+
+    /**
+     * 是否为提取了属性的事件
+     *
+     * @param data 存储的事件字节
+     */
+    static boolean isInterned(byte[] data) {
+        return data != null && startsWith(data, 0, PROPERTY_SET_PREFIX_BYTES);
+    }
+
+    /**
+     * 获取事件引用的属性集合哈希，写入 Event 表的 ps_hash 字段
+     *
+     * @param data 存储的事件字节
+     * @return 属性集合哈希，未提取属性时返回 null
+     */
+    static String hashOf(byte[] data) {
+        // 哈希紧跟在 {"_ps":" 之后，为 32 位十六进制字符
+        int start = PROPERTY_SET_PREFIX_BYTES.length + 1;
+        if (!isInterned(data) || data.length < start + HASH_LENGTH) {
+            return null;
+        }
+        return new String(data, start, HASH_LENGTH, Charset.forName(EventRecords.CHARSET));
+    }
+
+    /**
+     * 是否为提取了属性的事件
+     *
+     * @param content 存储的事件 JSON
+     */
+    static boolean isInterned(String content) {
+        return content != null && content.startsWith(PROPERTY_SET_PREFIX);
+    }
+
+    /**
+     * 将提取了属性的事件按字节还原，公共属性在前，事件自身的属性在后。
+     * 提取时已从事件中去掉公共属性，两者不会重复
+     *
+     * @param data 存储的事件字节
+     * @return 还原后的事件字节，属性集合丢失时返回 null
+     */
+    synchronized byte[] expand(byte[] data) {
+        String hash = hashOf(data);
+        // 哈希之后为 ","properties":{，至少还有 }} 两个字节
+        int head = PROPERTY_SET_PREFIX_BYTES.length + HASH_LENGTH + 3;
+        if (hash == null || data.length < head + PROPERTIES_HEAD_BYTES.length + 2
+                || data[head - 2] != '"' || data[head - 1] != ',' || !startsWith(data, head, PROPERTIES_HEAD_BYTES)) {
+            // 旧版本写入的数据 properties 不在固定位置，解析后还原
+            try {
+                String content = expand(new String(data, EventRecords.CHARSET));
+                return content == null ? null : content.getBytes(EventRecords.CHARSET);
+            } catch (Exception e) {
+                BzLog.printStackTrace(e);
+                return null;
+            }
+        }
+        byte[] shared = load(hash);
+        if (shared == null) {
+            return null;
+        }
+        // 去掉 "_ps":"哈希", 和属性集合首尾的 {}
+        int propertiesStart = head + PROPERTIES_HEAD_BYTES.length;
+        int sharedLength = shared.length - 2;
+        boolean hasOthers = data[propertiesStart] != '}';
+        byte[] event = new byte[1 + data.length - head + sharedLength + (hasOthers ? 1 : 0)];
+        int offset = 0;
+        event[offset++] = '{';
+        System.arraycopy(data, head, event, offset, PROPERTIES_HEAD_BYTES.length);
+        offset += PROPERTIES_HEAD_BYTES.length;
+        System.arraycopy(shared, 1, event, offset, sharedLength);
+        offset += sharedLength;
+        if (hasOthers) {
+            event[offset++] = ',';
+        }
+        System.arraycopy(data, propertiesStart, event, offset, data.length - propertiesStart);
+        return event;
+    }
+
+    /**
+     * 将提取了属性的事件还原，用于旧格式的数据
+     *
+     * @param content 存储的事件 JSON
+     * @return 还原后的事件 JSON，属性集合丢失时返回 null
+     */
+    synchronized String expand(String content) {
+        try {
+            JSONObject delta = new JSONObject(content);
+            byte[] data = load(delta.getString(KEY_PROPERTY_SET));
+            if (data == null) {
+                return null;
+            }
+            JSONObject shared = new JSONObject(new String(data, EventRecords.CHARSET));
+            JSONObject event = new JSONObject();
+            Iterator<String> iterator = delta.keys();
+            while (iterator.hasNext()) {
+                String key = iterator.next();
+                if (KEY_PROPERTY_SET.equals(key)) {
+                    continue;
+                }
+                if (KEY_PROPERTIES.equals(key)) {
+                    // 公共属性在前，事件自身的属性覆盖公共属性
+                    JSONObject properties = new JSONObject();
+                    merge(shared, properties);
+                    merge(delta.getJSONObject(key), properties);
+                    event.put(key, properties);
+                } else {
+                    event.put(key, delta.get(key));
+                }
+            }
+            return event.toString();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+            return null;
+        }
+    }
+
+    /**
+     * 删除没有事件引用的属性集合，在上报的事件删除后调用
+     */
+    synchronized void prune() {
+        try {
+            mStorage.prune();
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+        reset();
+    }
+
+    /**
+     * 清除本进程保存过的属性集合记录，下次写入时重新保存。
+     * 属性集合被删除后（包括被其它进程删除）调用
+     */
+    synchronized void reset() {
+        mSavedHashes.clear();
+        mLastData = null;
+        mLastHash = null;
+        mLoadedSets.clear();
+    }
+
+    private String save(String data) throws Exception {
+        if (data.equals(mLastData)) {
+            return mLastHash;
+        }
+        String hash = hash(data);
+        if (!mSavedHashes.contains(hash)) {
+            mStorage.save(hash, data);
+            mSavedHashes.add(hash);
+        }
+        mLastData = data;
+        mLastHash = hash;
+        return hash;
+    }
+
+    private byte[] load(String hash) {
+        byte[] shared = mLoadedSets.get(hash);
+        if (shared == null) {
+            String data = mStorage.load(hash);
+            // 属性集合为 JSONObject.toString() 的结果，至少包含一个属性
+            if (TextUtils.isEmpty(data) || !data.startsWith("{") || !data.endsWith("}") || data.length() < 3) {
+                return null;
+            }
+            shared = data.getBytes(Charset.forName(EventRecords.CHARSET));
+            mLoadedSets.put(hash, shared);
+        }
+        return shared;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        if (data.length < offset + prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void merge(JSONObject source, JSONObject dest) throws Exception {
+        Iterator<String> iterator = source.keys();
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            dest.put(key, source.get(key));
+        }
+    }
+
+    private static String hash(String data) throws Exception {
+        byte[] digest = MessageDigest.getInstance("MD5").digest(data.getBytes("UTF-8"));
+        StringBuilder builder = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+}
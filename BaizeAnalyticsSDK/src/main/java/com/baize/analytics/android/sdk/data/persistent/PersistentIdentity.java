@@ -78,8 +78,22 @@ public abstract class PersistentIdentity<T> {
      *
      * @param item 数据值
      */
-    @SuppressWarnings("unchecked")
     public void commit(T item) {
+        save(item, false);
+    }
+
+    /**
+     * 保存数据值，写入磁盘后才返回
+     *
+     * @param item 数据值
+     * @return 是否写入成功
+     */
+    public boolean commitSync(T item) {
+        return save(item, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean save(T item, boolean sync) {
         this.item = item;
 
         synchronized (loadStoredPreferences) {
@@ -93,7 +107,7 @@ public abstract class PersistentIdentity<T> {
             }
 
             if (sharedPreferences == null) {
-                return;
+                return false;
             }
 
             final SharedPreferences.Editor editor = sharedPreferences.edit();
@@ -101,7 +115,11 @@ public abstract class PersistentIdentity<T> {
                 this.item = (T) serializer.create();
             }
             editor.putString(persistentKey, serializer.save(this.item));
+            if (sync) {
+                return editor.commit();
+            }
             editor.apply();
+            return true;
         }
     }
 
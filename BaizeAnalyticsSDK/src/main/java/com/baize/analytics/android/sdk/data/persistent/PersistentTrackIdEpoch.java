@@ -0,0 +1,49 @@
+/*
+ * Created by bkb on 2020/06/06.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data.persistent;
+
+import android.content.SharedPreferences;
+
+import com.baize.analytics.android.sdk.data.PersistentLoader;
+
+import java.security.SecureRandom;
+import java.util.concurrent.Future;
+
+/**
+ * _track_id 的安装纪元，首次使用时随机生成，之后保持不变
+ */
+public class PersistentTrackIdEpoch extends PersistentIdentity<Integer> {
+    public PersistentTrackIdEpoch(Future<SharedPreferences> loadStoredPreferences) {
+        super(loadStoredPreferences, PersistentLoader.PersistentName.TRACK_ID_EPOCH, new PersistentSerializer<Integer>() {
+            @Override
+            public Integer load(String value) {
+                return Integer.valueOf(value);
+            }
+
+            @Override
+            public String save(Integer item) {
+                return item == null ? create().toString() : String.valueOf(item);
+            }
+
+            @Override
+            public Integer create() {
+                return new SecureRandom().nextInt() & Integer.MAX_VALUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Created by bkb on 2020/06/06.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.data.persistent;
+
+import android.content.SharedPreferences;
+
+import com.baize.analytics.android.sdk.BzLog;
+import com.baize.analytics.android.sdk.data.PersistentLoader;
+
+import java.util.concurrent.Future;
+
+/**
+ * 已预留的 _track_id 序号上限，重启后从该值继续分配
+ */
+public class PersistentTrackIdSequence extends PersistentIdentity<Long> {
+    private static final String TAG = "SA.PersistentTrackIdSequence";
+
+    public PersistentTrackIdSequence(Future<SharedPreferences> loadStoredPreferences) {
+        super(loadStoredPreferences, PersistentLoader.PersistentName.TRACK_ID_SEQUENCE, new PersistentSerializer<Long>() {
+            @Override
+            public Long load(String value) {
+                return Long.valueOf(value);
+            }
+
+            @Override
+            public String save(Long item) {
+                return item == null ? create().toString() : String.valueOf(item);
+            }
+
+            @Override
+            public Long create() {
+                return 0L;
+            }
+        });
+    }
+
+    /**
+     * 预留一块序号，写入磁盘后才返回，进程被杀后不会重复分配
+     *
+     * @param count 预留的个数
+     * @return 这块序号的起始值，写入失败时返回 -1，由调用方退回随机序号
+     */
+    public synchronized long reserve(long count) {
+        long start = get();
+        if (!commitSync(start + count)) {
+            BzLog.i(TAG, "Failed to persist the reserved _track_id sequence");
+            return -1;
+        }
+        return start;
+    }
+}
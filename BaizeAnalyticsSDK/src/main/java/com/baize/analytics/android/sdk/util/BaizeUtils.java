@@ -69,6 +69,7 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class BaizeUtils {
 
@@ -122,6 +123,11 @@ public final class BaizeUtils {
         }
     };
     private static final String TAG = "Bz.BaizeUtils";
+    /* 权限检测结果缓存，App 回到前台时清空 */
+    private static final Map<String, Boolean> sPermissionCache = new ConcurrentHashMap<>();
+    /* ContextCompat.checkSelfPermission，只查找一次 */
+    private static Method sCheckSelfPermissionMethod;
+    private static volatile boolean sCheckSelfPermissionResolved = false;
 
     /**
      * 将 json 格式的字符串转成 BaizeSDKRemoteConfig 对象，并处理默认值
@@ -659,34 +665,26 @@ public final class BaizeUtils {
      * @return true:已允许该权限; false:没有允许该权限
      */
     public static boolean checkHasPermission(Context context, String permission) {
+        Boolean granted = sPermissionCache.get(permission);
+        if (granted != null) {
+            return granted;
+        }
         try {
-            Class<?> contextCompat = null;
-            try {
-                contextCompat = Class.forName("android.support.v4.content.ContextCompat");
-            } catch (Exception e) {
-                //ignored
-            }
-
-            if (contextCompat == null) {
-                try {
-                    contextCompat = Class.forName("androidx.core.content.ContextCompat");
-                } catch (Exception e) {
-                    //ignored
-                }
-            }
-
-            if (contextCompat == null) {
+            Method checkSelfPermissionMethod = getCheckSelfPermissionMethod();
+            if (checkSelfPermissionMethod == null) {
+                sPermissionCache.put(permission, true);
                 return true;
             }
 
-            Method checkSelfPermissionMethod = contextCompat.getMethod("checkSelfPermission", Context.class, String.class);
             int result = (int) checkSelfPermissionMethod.invoke(null, new Object[]{context, permission});
             if (result != PackageManager.PERMISSION_GRANTED) {
                 BzLog.i(TAG, "You can fix this by adding the following to your AndroidManifest.xml file:\n"
                         + "<uses-permission android:name=\"" + permission + "\" />");
+                sPermissionCache.put(permission, false);
                 return false;
             }
 
+            sPermissionCache.put(permission, true);
             return true;
         } catch (Exception e) {
             BzLog.i(TAG, e.toString());
@@ -694,6 +692,48 @@ public final class BaizeUtils {
         }
     }
 
+    /**
+     * 清空权限检测结果缓存，App 回到前台时调用，以获取运行时授予或撤销的权限
+     */
+    public static void clearPermissionCache() {
+        sPermissionCache.clear();
+    }
+
+    /**
+     * 查找 ContextCompat.checkSelfPermission 方法，只在第一次调用时反射查找
+     *
+     * @return checkSelfPermission 方法，没有依赖 support 或 androidx 时返回 null
+     */
+    private static synchronized Method getCheckSelfPermissionMethod() {
+        if (sCheckSelfPermissionResolved) {
+            return sCheckSelfPermissionMethod;
+        }
+        Class<?> contextCompat = null;
+        try {
+            contextCompat = Class.forName("android.support.v4.content.ContextCompat");
+        } catch (Exception e) {
+            //ignored
+        }
+
+        if (contextCompat == null) {
+            try {
+                contextCompat = Class.forName("androidx.core.content.ContextCompat");
+            } catch (Exception e) {
+                //ignored
+            }
+        }
+
+        if (contextCompat != null) {
+            try {
+                sCheckSelfPermissionMethod = contextCompat.getMethod("checkSelfPermission", Context.class, String.class);
+            } catch (Exception e) {
+                BzLog.i(TAG, e.toString());
+            }
+        }
+        sCheckSelfPermissionResolved = true;
+        return sCheckSelfPermissionMethod;
+    }
+
     /**
      * 此方法谨慎修改
      * 插件配置 disableIMEI 会修改此方法
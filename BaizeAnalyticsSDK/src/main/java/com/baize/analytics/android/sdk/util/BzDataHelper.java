@@ -26,20 +26,42 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.regex.Pattern;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class BzDataHelper {
 
     private static final String TAG = "SA.BzDataHelper";
-
-    private static final Pattern KEY_PATTERN = Pattern.compile(
-            "^((?!^distinct_id$|^original_id$|^device_id$|^time$|^properties$|^id$|^first_id$|^second_id$|^users$|^events$|^event$|^user_id$|^date$|^datetime$)[a-zA-Z_$][a-zA-Z\\d_$]{0,99})$",
-            Pattern.CASE_INSENSITIVE);
+    private static final int MAX_KEY_LENGTH = 100;
+    private static final int MAX_VALUE_LENGTH = 8191;
+    /* 已校验通过的 key 缓存上限，超过后清空重新缓存 */
+    private static final int MAX_VALIDATED_KEY_SIZE = 1000;
+    /* 保留字段，不区分大小写 */
+    private static final Set<String> RESERVED_KEYS = new HashSet<>(Arrays.asList("distinct_id", "original_id",
+            "device_id", "time", "properties", "id", "first_id", "second_id", "users", "events", "event", "user_id",
+            "date", "datetime"));
+    private static final Map<String, Boolean> sValidatedKeys = new ConcurrentHashMap<>();
 
     public static void assertPropertyTypes(JSONObject properties) throws
             InvalidDataException {
+        assertPropertyTypes(properties, false);
+    }
+
+    /**
+     * 校验属性的 key 和 value 类型，截断超长的字符串，在一次遍历内完成
+     *
+     * @param properties 属性
+     * @param formatDate 是否将 Date 类型的 value 格式化为字符串
+     * @throws InvalidDataException 属性的 key 或 value 不合法
+     */
+    public static void assertPropertyTypes(JSONObject properties, boolean formatDate) throws
+            InvalidDataException {
         if (properties == null) {
             return;
         }
@@ -60,18 +82,15 @@ public class BzDataHelper {
                             + "']");
                 }
 
-                if ("app_crashed_reason".equals(key)) {
-                    if (value instanceof String && ((String) value).length() > 8191 * 2) {
-                        properties.put(key, ((String) value).substring(0, 8191 * 2) + "$");
-                        BzLog.d(TAG, "The property value is too long. [key='" + key
-                                + "', value='" + value.toString() + "']");
-                    }
-                } else {
-                    if (value instanceof String && ((String) value).length() > 8191) {
-                        properties.put(key, ((String) value).substring(0, 8191) + "$");
+                if (value instanceof String) {
+                    int maxLength = "app_crashed_reason".equals(key) ? MAX_VALUE_LENGTH * 2 : MAX_VALUE_LENGTH;
+                    if (((String) value).length() > maxLength) {
+                        properties.put(key, ((String) value).substring(0, maxLength) + "$");
                         BzLog.d(TAG, "The property value is too long. [key='" + key
                                 + "', value='" + value.toString() + "']");
                     }
+                } else if (formatDate && value instanceof Date) {
+                    properties.put(key, DateFormatUtils.formatDate((Date) value, Locale.CHINA));
                 }
             } catch (JSONException e) {
                 throw new InvalidDataException("Unexpected property key. [key='" + key + "']");
@@ -83,9 +102,38 @@ public class BzDataHelper {
         if (null == key || key.length() < 1) {
             throw new InvalidDataException("The key is empty.");
         }
-        if (!(KEY_PATTERN.matcher(key).matches())) {
+        if (sValidatedKeys.containsKey(key)) {
+            return;
+        }
+        if (!isValidKey(key)) {
             throw new InvalidDataException("The key '" + key + "' is invalid.");
         }
+        if (sValidatedKeys.size() >= MAX_VALIDATED_KEY_SIZE) {
+            sValidatedKeys.clear();
+        }
+        sValidatedKeys.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * 校验 key：以字母、_、$ 开头，只包含字母、数字、_、$，长度不超过 100，且不是保留字段
+     *
+     * @param key key
+     * @return true：合法，false：不合法
+     */
+    static boolean isValidKey(String key) {
+        int length = key.length();
+        if (length < 1 || length > MAX_KEY_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$'
+                    || (i > 0 && c >= '0' && c <= '9');
+            if (!valid) {
+                return false;
+            }
+        }
+        return !RESERVED_KEYS.contains(key.toLowerCase(Locale.ENGLISH));
     }
 
     public static void assertValue(String value) throws InvalidDataException {
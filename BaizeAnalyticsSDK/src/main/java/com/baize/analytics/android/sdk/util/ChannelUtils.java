@@ -79,6 +79,11 @@ public class ChannelUtils {
 
     private static Map<String, String> sLatestUtmProperties = new HashMap<>();
 
+    /**
+     * $latest_utm 属性的版本号，每次修改后递增
+     */
+    private static volatile int sLatestUtmVersion;
+
     public static JSONObject getUtmProperties() {
         if (sUtmProperties.size() > 0) {
             return new JSONObject(sUtmProperties);
@@ -86,6 +91,15 @@ public class ChannelUtils {
         return new JSONObject();
     }
 
+    /**
+     * 获取 $latest_utm 属性的版本号，用于判断属性是否有变化
+     *
+     * @return 版本号
+     */
+    public static int getLatestUtmVersion() {
+        return sLatestUtmVersion;
+    }
+
     public static JSONObject getLatestUtmProperties() {
         if (sLatestUtmProperties.size() > 0) {
             return new JSONObject(sLatestUtmProperties);
@@ -256,6 +270,7 @@ public class ChannelUtils {
                             BzLog.printStackTrace(e);
                         }
                     }
+                    sLatestUtmVersion++;
                     intent.putExtra(IS_FIRST_DEEPLINK_ACTIVITY_KEY, isStart);
                     if (isSaveDeepLinkInfo) {
                         saveDeepLinkInfo(activity.getApplicationContext());
@@ -292,6 +307,7 @@ public class ChannelUtils {
                     }
                 }
             }
+            sLatestUtmVersion++;
         } catch (Exception e) {
             BzLog.printStackTrace(e);
         }
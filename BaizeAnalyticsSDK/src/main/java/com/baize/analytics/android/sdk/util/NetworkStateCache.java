@@ -0,0 +1,189 @@
+/*
+ * Created by bkb on 2020/06/07.
+ * Copyright 2015－2020 Hong Yu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baize.analytics.android.sdk.util;
+
+import android.Manifest;
+import android.annotation.TargetApi;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.LinkProperties;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.baize.analytics.android.sdk.BzLog;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 进程内的网络状态缓存。
+ * 注册网络变化监听后，网络类型只在网络变化后或缓存超过 {@link #CACHE_TTL} 后的第一次读取时重新获取，其余读取直接返回缓存值；
+ * 移动网络的制式变化（例如 4G 切换到 3G）不会触发监听，由 CACHE_TTL 兜底。注册失败时退化为每次实时获取。
+ */
+public class NetworkStateCache {
+    private static final String TAG = "SA.NetworkStateCache";
+    /* 缓存的有效时长 */
+    private static final long CACHE_TTL = 30 * 1000;
+    private static volatile NetworkStateCache instance;
+    private volatile boolean mRegistered = false;
+    /* 网络变化的次数，每次变化后加 1 */
+    private final AtomicInteger mVersion = new AtomicInteger();
+    /* 缓存值获取时的 mVersion，与 mVersion 不同时缓存失效 */
+    private volatile int mCachedVersion = -1;
+    private volatile long mCachedTime;
+    private volatile String mNetworkType = "NULL";
+    private volatile boolean mNetworkAvailable = false;
+
+    private NetworkStateCache() {
+    }
+
+    public static NetworkStateCache getInstance() {
+        if (instance == null) {
+            synchronized (NetworkStateCache.class) {
+                if (instance == null) {
+                    instance = new NetworkStateCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 注册网络变化监听，API 21 及以上使用 NetworkCallback，以下使用 CONNECTIVITY_ACTION 广播
+     *
+     * @param context Context
+     */
+    public synchronized void register(Context context) {
+        if (mRegistered || context == null) {
+            return;
+        }
+        try {
+            final Context appContext = context.getApplicationContext();
+            if (!BaizeUtils.checkHasPermission(appContext, Manifest.permission.ACCESS_NETWORK_STATE)) {
+                return;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                registerNetworkCallback(appContext);
+            } else {
+                appContext.registerReceiver(new BroadcastReceiver() {
+                    @Override
+                    public void onReceive(Context context, Intent intent) {
+                        invalidate();
+                    }
+                }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+            }
+            mRegistered = true;
+        } catch (Exception e) {
+            BzLog.printStackTrace(e);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void registerNetworkCallback(Context context) {
+        ConnectivityManager manager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (manager == null) {
+            throw new IllegalStateException("ConnectivityManager is null");
+        }
+        manager.registerNetworkCallback(new NetworkRequest.Builder().build(), new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                invalidate();
+            }
+
+            @Override
+            public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                invalidate();
+            }
+
+            @Override
+            public void onLinkPropertiesChanged(Network network, LinkProperties linkProperties) {
+                invalidate();
+            }
+
+            @Override
+            public void onLost(Network network) {
+                invalidate();
+            }
+        });
+    }
+
+    /**
+     * 网络发生变化，下次读取时重新获取
+     */
+    private void invalidate() {
+        mVersion.incrementAndGet();
+        BzLog.d(TAG, "network changed");
+    }
+
+    /**
+     * 获取网络类型
+     *
+     * @param context Context
+     * @return 网络类型
+     */
+    public String networkType(Context context) {
+        if (!mRegistered) {
+            return NetworkUtils.networkType(context);
+        }
+        refresh(context);
+        return mNetworkType;
+    }
+
+    /**
+     * 是否有可用网络
+     *
+     * @param context Context
+     * @return true：网络可用，false：网络不可用
+     */
+    public boolean isNetworkAvailable(Context context) {
+        if (!mRegistered) {
+            return NetworkUtils.isNetworkAvailable(context);
+        }
+        refresh(context);
+        return mNetworkAvailable;
+    }
+
+    private boolean isValid() {
+        return mCachedVersion == mVersion.get() && SystemClock.elapsedRealtime() - mCachedTime < CACHE_TTL;
+    }
+
+    private void refresh(Context context) {
+        if (isValid()) {
+            return;
+        }
+        synchronized (this) {
+            if (isValid()) {
+                return;
+            }
+            // 记录获取前的版本，获取过程中网络再次变化时缓存不会被当作有效
+            int version = mVersion.get();
+            boolean networkAvailable = NetworkUtils.isNetworkAvailable(context);
+            String networkType = NetworkUtils.networkType(context);
+            // 先写入网络状态，再标记为有效，读取方看到有效时一定能读到本次获取的值
+            mNetworkAvailable = networkAvailable;
+            mNetworkType = networkType;
+            mCachedTime = SystemClock.elapsedRealtime();
+            mCachedVersion = version;
+        }
+    }
+}